@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b.benchmark;
+
+import org.jeesy.csv2b.CsvBeanWriter;
+import org.jeesy.csv2b.CsvEmbed;
+import org.jeesy.csv2b.CsvModel;
+import org.jeesy.csv2b.CsvRow;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generated beans with embedded bean and their csv form
+ * @author Artem Mironov
+ */
+@State(Scope.Benchmark)
+public class BeanDataset {
+    public static final int ROWS = CsvDataset.ROWS;
+
+    @Param({"8", "64"})
+    public int fieldLength;
+
+    @Param({"0", "0.25"})
+    public double quoting;
+
+    @CsvRow(order = {"id", "amount", "price", "name", "comment", "address"})
+    public static class Item {
+        public Integer id;
+        public Long amount;
+        public Double price;
+        public String name;
+        public String comment;
+        @CsvEmbed
+        public Address address;
+    }
+
+    @CsvRow(order = {"city", "street"})
+    public static class Address {
+        public String city;
+        public String street;
+    }
+
+    public List<Item> beans;
+    public String csv;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        beans = new ArrayList<>(ROWS);
+        for(int i = 0; i<ROWS; i++) {
+            Item item = new Item();
+            item.id = i;
+            item.amount = random.nextLong();
+            item.price = random.nextInt(1000000) / 100.0;
+            item.name = CsvDataset.text(random, fieldLength, quoting);
+            item.comment = CsvDataset.text(random, fieldLength, quoting);
+            item.address = new Address();
+            item.address.city = CsvDataset.text(random, fieldLength, quoting);
+            item.address.street = CsvDataset.text(random, fieldLength, quoting);
+            beans.add(item);
+        }
+        StringWriter sw = new StringWriter();
+        try(CsvBeanWriter<Item> writer = CsvModel.STANDARD.newBeanWriter(Item.class, sw)) {
+            writer.writeHeader();
+            writer.writeBeans(beans);
+        }
+        csv = sw.toString();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b.benchmark;
+
+import org.jeesy.csv2b.CsvBeanReader;
+import org.jeesy.csv2b.CsvBeanWriter;
+import org.jeesy.csv2b.CsvException;
+import org.jeesy.csv2b.CsvModel;
+import org.jeesy.csv2b.CsvReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bean mapping in both directions, score is beans per second
+ * @author Artem Mironov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvBeanBenchmark {
+
+    @Benchmark
+    @OperationsPerInvocation(BeanDataset.ROWS)
+    public void readOne(BeanDataset data, final Blackhole blackhole) throws IOException {
+        try(CsvBeanReader<BeanDataset.Item> reader = CsvModel.STANDARD.newBeanReader(BeanDataset.Item.class, new StringReader(data.csv), true)) {
+            CsvReader.RowHandler<BeanDataset.Item> handler = new CsvReader.RowHandler<BeanDataset.Item>() {
+                @Override
+                public boolean onError(CsvException e) {
+                    throw e;
+                }
+
+                @Override
+                public boolean onValue(int rowNum, BeanDataset.Item value) {
+                    blackhole.consume(value);
+                    return true;
+                }
+            };
+            while(reader.readOne(handler));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BeanDataset.ROWS)
+    public void beanToArray(BeanDataset data, Blackhole blackhole) {
+        CsvBeanWriter<BeanDataset.Item> writer = CsvModel.STANDARD.newBeanWriter(BeanDataset.Item.class, new NullWriter());
+        List<BeanDataset.Item> beans = data.beans;
+        for(int i = 0; i<beans.size(); i++) blackhole.consume(writer.beanToArray(beans.get(i)));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BeanDataset.ROWS)
+    public long writeBeans(BeanDataset data) throws IOException {
+        NullWriter out = new NullWriter();
+        try(CsvBeanWriter<BeanDataset.Item> writer = CsvModel.STANDARD.newBeanWriter(BeanDataset.Item.class, out)) {
+            writer.writeBeans(data.beans);
+        }
+        return out.getCount();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b.benchmark;
+
+import org.jeesy.csv2b.CsvModel;
+import org.jeesy.csv2b.CsvWriter;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generated plain csv dataset.
+ * Same seed is used for every trial, so results of different runs are comparable.
+ * @author Artem Mironov
+ */
+@State(Scope.Benchmark)
+public class CsvDataset {
+    public static final int ROWS = 10000;
+    static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ";
+
+    @Param({"4", "64"})
+    public int columns;
+
+    @Param({"8", "64"})
+    public int fieldLength;
+
+    /**
+     * Share of string fields what need quoting
+     */
+    @Param({"0", "0.25"})
+    public double quoting;
+
+    @Param({"NUMERIC", "TEXT"})
+    public Content content;
+
+    public enum Content {
+        NUMERIC, TEXT
+    }
+
+    public List<String[]> rows;
+    public String csv;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        rows = new ArrayList<>(ROWS);
+        for(int i = 0; i<ROWS; i++) {
+            String [] row = new String[columns];
+            for(int j = 0; j<columns; j++) {
+                row[j] = content == Content.NUMERIC ? number(random, j) : text(random, fieldLength, quoting);
+            }
+            rows.add(row);
+        }
+        csv = toCsv(rows);
+    }
+
+    static String number(Random random, int column) {
+        if(column % 2 == 0) return String.valueOf(random.nextInt());
+        return String.valueOf(random.nextInt(1000000) / 100.0);
+    }
+
+    static String text(Random random, int length, double quoting) {
+        StringBuilder sb = new StringBuilder(length + 2);
+        for(int i = 0; i<length; i++) sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        if(random.nextDouble() < quoting) {
+            //put special chars in the middle of the field
+            sb.insert(length / 2, random.nextBoolean() ? "\"," : "\r\n");
+        }
+        return sb.toString();
+    }
+
+    static String toCsv(List<String[]> rows) throws IOException {
+        StringWriter sw = new StringWriter();
+        try(CsvWriter writer = CsvModel.STANDARD.newWriter(sw)) {
+            writer.write(rows);
+        }
+        return sw.toString();
+    }
+}
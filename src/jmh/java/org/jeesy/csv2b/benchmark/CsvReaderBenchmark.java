@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b.benchmark;
+
+import org.jeesy.csv2b.CsvCursor;
+import org.jeesy.csv2b.CsvException;
+import org.jeesy.csv2b.CsvModel;
+import org.jeesy.csv2b.CsvReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plain row reading, score is rows per second
+ * @author Artem Mironov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvReaderBenchmark {
+
+    /**
+     * Pass rows to blackhole without collecting them
+     */
+    private static final class BlackholeRowHandler implements CsvReader.RowHandler<String[]> {
+        private final Blackhole blackhole;
+
+        BlackholeRowHandler(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public boolean onError(CsvException e) {
+            throw e;
+        }
+
+        @Override
+        public boolean onValue(int rowNum, String[] value) {
+            blackhole.consume(value);
+            return true;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CsvDataset.ROWS)
+    public void readRows(CsvDataset data, Blackhole blackhole) throws IOException {
+        try(CsvReader reader = CsvModel.STANDARD.newReader(new StringReader(data.csv))) {
+            reader.read(new BlackholeRowHandler(blackhole));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CsvDataset.ROWS)
+    public void readFirstColumn(CsvDataset data, Blackhole blackhole) throws IOException {
+        try(CsvReader reader = CsvModel.STANDARD.newReader(new StringReader(data.csv))) {
+            reader.setProjection(1);
+            reader.read(new BlackholeRowHandler(blackhole));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CsvDataset.ROWS)
+    public void cursor(CsvDataset data, Blackhole blackhole) throws IOException {
+        try(CsvCursor cursor = CsvModel.STANDARD.newReader(new StringReader(data.csv)).cursor()) {
+            if(data.content == CsvDataset.Content.NUMERIC) {
+                while(cursor.next()) {
+                    blackhole.consume(cursor.getInt(0));
+                    if(cursor.fieldCount() > 1) blackhole.consume(cursor.getDouble(1));
+                }
+            } else {
+                while(cursor.next()) blackhole.consume(cursor.charSequence(0).length());
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b.benchmark;
+
+import org.jeesy.csv2b.CsvModel;
+import org.jeesy.csv2b.CsvWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plain row writing, score is rows per second
+ * @author Artem Mironov
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvWriterBenchmark {
+
+    @Benchmark
+    @OperationsPerInvocation(CsvDataset.ROWS)
+    public long write(CsvDataset data) throws IOException {
+        NullWriter out = new NullWriter();
+        try(CsvWriter writer = CsvModel.STANDARD.newWriter(out)) {
+            List<String[]> rows = data.rows;
+            for(int i = 0; i<rows.size(); i++) writer.write(rows.get(i));
+        }
+        return out.getCount();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CsvDataset.ROWS)
+    public long writeBatch(CsvDataset data) throws IOException {
+        NullWriter out = new NullWriter();
+        try(CsvWriter writer = CsvModel.STANDARD.newWriter(out)) {
+            writer.write(data.rows);
+        }
+        return out.getCount();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b.benchmark;
+
+import java.io.Writer;
+
+/**
+ * Writer what drops everything, keeps benchmarks free from output costs
+ * @author Artem Mironov
+ */
+final class NullWriter extends Writer {
+    private long count = 0;
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        count += len;
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        count += len;
+    }
+
+    @Override
+    public void write(int c) {
+        count++;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,639 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Streaming group by over csv rows.
+ * Rows are read by {@link CsvCursor}, only key and aggregated columns are copied from input,
+ * numbers are parsed from field chars into primitive accumulators of the group found in open addressing hash table,
+ * so nothing is allocated per row except keys and distinct values seen first time.
+ * <p>
+ * Files can be aggregated on several cores: file is split to row ranges like in {@link CsvParallelBeanReader},
+ * each range is aggregated separately and partial results are merged in file order.
+ * Groups come in order of their first row in both modes.
+ * Empty values are not aggregated, sum, min and max of group without values are empty.
+ * @author Artem Mironov
+ */
+public class CsvAggregator {
+    public static final long DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    public enum Function {
+        COUNT, SUM, MIN, MAX, COUNT_DISTINCT
+    }
+
+    private static final class Aggregate {
+        final Function function;
+        final String column;
+        final CsvColumnarReader.Type type;
+        final String name;
+
+        Aggregate(Function function, String column, CsvColumnarReader.Type type, String name) {
+            this.function = function;
+            this.column = column;
+            this.type = type;
+            this.name = name;
+        }
+
+        boolean isDouble() {
+            return type == CsvColumnarReader.Type.DOUBLE && function != Function.COUNT && function != Function.COUNT_DISTINCT;
+        }
+    }
+
+    private final CsvModel model;
+    private final List<String> keyColumns = new ArrayList<>();
+    private final List<Aggregate> aggregates = new ArrayList<>();
+    private String [] header;
+    private boolean parallel = false;
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+    private ForkJoinPool pool;
+
+    public CsvAggregator(CsvModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Add key columns, rows without keys are aggregated to single group
+     */
+    public void groupBy(String... columns) {
+        for(String column : columns) {
+            if(keyColumns.contains(column)) throw new IllegalArgumentException("Key column already added " + column);
+            keyColumns.add(column);
+        }
+    }
+
+    private void add(Function function, String column, CsvColumnarReader.Type type, String name) {
+        if(type == CsvColumnarReader.Type.STRING && function != Function.COUNT_DISTINCT) {
+            throw new IllegalArgumentException("Only numbers can be aggregated by " + function);
+        }
+        for(Aggregate a : aggregates) {
+            if(a.name.equals(name)) throw new IllegalArgumentException("Aggregate already added " + name);
+        }
+        aggregates.add(new Aggregate(function, column, type, name));
+    }
+
+    /**
+     * Count rows of group
+     * @param name output column name
+     */
+    public void count(String name) {
+        add(Function.COUNT, null, CsvColumnarReader.Type.LONG, name);
+    }
+
+    /**
+     * @param type INT and LONG are summed as long, DOUBLE as double
+     */
+    public void sum(String column, CsvColumnarReader.Type type, String name) {
+        add(Function.SUM, column, type, name);
+    }
+
+    public void min(String column, CsvColumnarReader.Type type, String name) {
+        add(Function.MIN, column, type, name);
+    }
+
+    public void max(String column, CsvColumnarReader.Type type, String name) {
+        add(Function.MAX, column, type, name);
+    }
+
+    /**
+     * Count different non empty values of column
+     */
+    public void countDistinct(String column, String name) {
+        add(Function.COUNT_DISTINCT, column, CsvColumnarReader.Type.STRING, name);
+    }
+
+    /**
+     * Column names for input without header row, by default header is read from the first row
+     */
+    public void setHeader(String [] header) {
+        this.header = header;
+    }
+
+    /**
+     * Aggregate files on several cores, false by default
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Approximate size of the byte range aggregated as single task in parallel mode
+     */
+    public void setChunkSize(long chunkSize) {
+        if(chunkSize <= 0) throw new IllegalArgumentException("Chunk size should be positive");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Pool for parallel mode, if not set new pool is created for each call
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Zero based indexes of key and aggregated fields in rows with given header
+     */
+    private int [] fields(String [] names) {
+        if(names == null || names.length == 0) throw new IllegalArgumentException("No header to find columns in");
+        int [] fields = new int[keyColumns.size() + aggregates.size()];
+        List<String> columns = Arrays.asList(names);
+        for(int i = 0; i<fields.length; i++) {
+            String column = i < keyColumns.size() ? keyColumns.get(i) : aggregates.get(i - keyColumns.size()).column;
+            if(column == null) {
+                fields[i] = -1;
+                continue;
+            }
+            fields[i] = columns.indexOf(column);
+            if(fields[i] < 0) throw new IllegalArgumentException("Column is not in header: " + column);
+        }
+        return fields;
+    }
+
+    private static boolean [] projection(int [] fields) {
+        int max = 0;
+        for(int f : fields) max = Math.max(max, f + 1);
+        boolean [] mask = new boolean[max + 1];
+        for(int f : fields) if(f >= 0) mask[f + 1] = true;
+        return mask;
+    }
+
+    /**
+     * Aggregate all rows of the cursor
+     */
+    private static void aggregate(CsvCursor cursor, Result result, int [] fields) throws CsvException {
+        for(;;) {
+            int rowNum = cursor.getRowNum();
+            if(cursor.next()) result.add(cursor, fields);
+            //empty rows move row number, end of input doesn't
+            else if(cursor.getRowNum() == rowNum) break;
+        }
+    }
+
+    /**
+     * Aggregate rows of the reader sequentially
+     */
+    public Result aggregate(Reader in) throws CsvException {
+        try(CsvReader reader = model.newReader(in)) {
+            return aggregate(reader);
+        } catch (IOException e) {
+            throw new CsvException(e);
+        }
+    }
+
+    /**
+     * Aggregate UTF-8 file
+     */
+    public Result aggregate(Path path) throws CsvException {
+        return aggregate(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Aggregate file, on several cores if parallel mode is set
+     * @param charset UTF-8 or single byte ASCII compatible charset
+     */
+    public Result aggregate(Path path, Charset charset) throws CsvException {
+        if(parallel) return aggregateParallel(path, charset);
+        try(CsvReader reader = model.newReader(path, charset)) {
+            return aggregate(reader);
+        } catch (IOException e) {
+            throw new CsvException(e);
+        }
+    }
+
+    private Result aggregate(CsvReader reader) throws CsvException {
+        int [] fields = fields(header != null ? header : reader.readRow());
+        Result result = new Result(keyColumns, aggregates);
+        int [] colNums = new int[fields.length];
+        int n = 0;
+        for(int f : fields) if(f >= 0) colNums[n++] = f + 1;
+        //without columns to read projection would read everything
+        reader.setProjection(n == 0 ? new int[] {1} : Arrays.copyOf(colNums, n));
+        aggregate(reader.cursor(), result, fields);
+        return result;
+    }
+
+    private Result aggregateParallel(Path path, Charset charset) throws CsvException {
+        ForkJoinPool p = pool != null ? pool : new ForkJoinPool();
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final CsvFileSplitter splitter = new CsvFileSplitter(channel, charset, model, header == null);
+            final int [] fields = fields(header != null ? header : splitter.getHeader());
+            final boolean [] mask = projection(fields);
+            List<CsvFileSplitter.Chunk> chunks = splitter.split(p, chunkSize);
+            int maxInFlight = p.getParallelism() * 2;
+            Deque<Future<Result>> inFlight = new ArrayDeque<>();
+            Result total = new Result(keyColumns, aggregates);
+            int next = 0;
+            try {
+                while(next < chunks.size() || !inFlight.isEmpty()) {
+                    while(next < chunks.size() && inFlight.size() < maxInFlight) {
+                        final CsvFileSplitter.Chunk chunk = chunks.get(next++);
+                        inFlight.add(p.submit(new Callable<Result>() {
+                            @Override
+                            public Result call() throws Exception {
+                                Result partial = new Result(keyColumns, aggregates);
+                                if(chunk.end <= chunk.start) return partial;
+                                CsvByteTokenizer tokenizer = splitter.tokenizer(chunk);
+                                CsvCursor cursor = new CsvCursor(tokenizer, mask, false);
+                                for(;;) {
+                                    tokenizer.skipPendingLineFeed();
+                                    if(tokenizer.getPosition() >= chunk.end) break;
+                                    if(cursor.next()) partial.add(cursor, fields);
+                                }
+                                return partial;
+                            }
+                        }));
+                    }
+                    total.merge(CsvFileSplitter.get(inFlight.poll()));
+                }
+            } finally {
+                for(Future<Result> f : inFlight) f.cancel(true);
+            }
+            return total;
+        } catch (IOException e) {
+            throw new CsvException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CsvException(e);
+        } finally {
+            if(pool == null) p.shutdownNow();
+        }
+    }
+
+    /**
+     * Set of (group, value) pairs for distinct counting
+     */
+    private static final class DistinctSet {
+        private int [] table = new int[64];
+        private int [] groups = new int[32];
+        private String [] values = new String[32];
+        private int [] hashes = new int[32];
+        private int size = 0;
+
+        private static int hash(int group, int valueHash) {
+            int h = group * 0x9E3779B9 + valueHash;
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * @return true if pair was not in set
+         */
+        boolean add(int group, CharSequence value, String str) {
+            int h = hash(group, CsvValueCache.hash(value));
+            int mask = table.length - 1;
+            int i = h & mask;
+            for(int slot; (slot = table[i]) != 0; i = (i + 1) & mask) {
+                int e = slot - 1;
+                if(hashes[e] == h && groups[e] == group && values[e].contentEquals(value)) return false;
+            }
+            if(size == groups.length) {
+                groups = Arrays.copyOf(groups, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            groups[size] = group;
+            values[size] = str != null ? str : value.toString();
+            hashes[size] = h;
+            table[i] = ++size;
+            if(size * 2 > table.length) rehash();
+            return true;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for(int e = 0; e<size; e++) {
+                int i = hashes[e] & mask;
+                while(table[i] != 0) i = (i + 1) & mask;
+                table[i] = e + 1;
+            }
+        }
+    }
+
+    /**
+     * Aggregated groups
+     */
+    public static final class Result {
+        private final String [] keyNames;
+        private final Aggregate [] aggregates;
+        private final int keyCount;
+        private int size = 0;
+        //keys of group g are keys[g * keyCount, (g + 1) * keyCount)
+        private String [] keys;
+        private int [] hashes = new int[16];
+        private int [] table = new int[32];
+        private final long [][] longs;
+        private final double [][] doubles;
+        //whether sum, min or max has any value
+        private final BitSet [] present;
+        private final DistinctSet [] distinct;
+
+        Result(List<String> keyNames, List<Aggregate> aggregates) {
+            this.keyNames = keyNames.toArray(new String[keyNames.size()]);
+            this.aggregates = aggregates.toArray(new Aggregate[aggregates.size()]);
+            this.keyCount = this.keyNames.length;
+            this.keys = new String[16 * keyCount];
+            int n = this.aggregates.length;
+            longs = new long[n][];
+            doubles = new double[n][];
+            present = new BitSet[n];
+            distinct = new DistinctSet[n];
+            for(int a = 0; a<n; a++) {
+                Aggregate aggregate = this.aggregates[a];
+                if(aggregate.isDouble()) doubles[a] = new double[16];
+                else longs[a] = new long[16];
+                if(aggregate.function == Function.COUNT_DISTINCT) distinct[a] = new DistinctSet();
+                else if(aggregate.function != Function.COUNT) present[a] = new BitSet();
+            }
+        }
+
+        private static CharSequence field(CsvCursor cursor, int field) {
+            return field < cursor.fieldCount() ? cursor.charSequence(field) : "";
+        }
+
+        private int keyHash(CsvCursor cursor, int [] fields) {
+            int h = 1;
+            for(int k = 0; k<keyCount; k++) h = 31 * h + CsvValueCache.hash(field(cursor, fields[k]));
+            return h ^ (h >>> 16);
+        }
+
+        private int keyHash(Result other, int group) {
+            int h = 1;
+            for(int k = 0; k<keyCount; k++) h = 31 * h + CsvValueCache.hash(other.keys[group * keyCount + k]);
+            return h ^ (h >>> 16);
+        }
+
+        private boolean keyEquals(int group, CsvCursor cursor, int [] fields) {
+            for(int k = 0; k<keyCount; k++) {
+                if(!keys[group * keyCount + k].contentEquals(field(cursor, fields[k]))) return false;
+            }
+            return true;
+        }
+
+        private boolean keyEquals(int group, Result other, int otherGroup) {
+            for(int k = 0; k<keyCount; k++) {
+                if(!keys[group * keyCount + k].equals(other.keys[otherGroup * keyCount + k])) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Group of the current cursor row, created if not found
+         */
+        private int group(CsvCursor cursor, int [] fields) {
+            int h = keyHash(cursor, fields);
+            int mask = table.length - 1;
+            int i = h & mask;
+            for(int slot; (slot = table[i]) != 0; i = (i + 1) & mask) {
+                if(hashes[slot - 1] == h && keyEquals(slot - 1, cursor, fields)) return slot - 1;
+            }
+            int g = newGroup(i, h);
+            for(int k = 0; k<keyCount; k++) keys[g * keyCount + k] = field(cursor, fields[k]).toString();
+            return g;
+        }
+
+        private int group(Result other, int otherGroup) {
+            int h = other.hashes[otherGroup];
+            int mask = table.length - 1;
+            int i = h & mask;
+            for(int slot; (slot = table[i]) != 0; i = (i + 1) & mask) {
+                if(hashes[slot - 1] == h && keyEquals(slot - 1, other, otherGroup)) return slot - 1;
+            }
+            int g = newGroup(i, h);
+            System.arraycopy(other.keys, otherGroup * keyCount, keys, g * keyCount, keyCount);
+            return g;
+        }
+
+        private int newGroup(int slot, int hash) {
+            int g = size;
+            if(g == hashes.length) {
+                int capacity = g * 2;
+                hashes = Arrays.copyOf(hashes, capacity);
+                keys = Arrays.copyOf(keys, capacity * keyCount);
+                for(int a = 0; a<aggregates.length; a++) {
+                    if(longs[a] != null) longs[a] = Arrays.copyOf(longs[a], capacity);
+                    else doubles[a] = Arrays.copyOf(doubles[a], capacity);
+                }
+            }
+            hashes[g] = hash;
+            table[slot] = ++size;
+            if(size * 2 > table.length) rehash();
+            return g;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for(int g = 0; g<size; g++) {
+                int i = hashes[g] & mask;
+                while(table[i] != 0) i = (i + 1) & mask;
+                table[i] = g + 1;
+            }
+        }
+
+        /**
+         * Aggregate current row of the cursor
+         * @param fields zero based indexes of key fields followed by aggregated ones
+         */
+        void add(CsvCursor cursor, int [] fields) throws CsvException {
+            int g = group(cursor, fields);
+            int count = cursor.fieldCount();
+            for(int a = 0; a<aggregates.length; a++) {
+                Aggregate aggregate = aggregates[a];
+                if(aggregate.function == Function.COUNT) {
+                    longs[a][g]++;
+                    continue;
+                }
+                int field = fields[keyCount + a];
+                if(field >= count || cursor.isEmpty(field)) continue;
+                if(aggregate.function == Function.COUNT_DISTINCT) {
+                    if(distinct[a].add(g, cursor.charSequence(field), null)) longs[a][g]++;
+                } else if(doubles[a] != null) {
+                    accumulate(a, g, cursor.getDouble(field));
+                } else if(aggregate.type == CsvColumnarReader.Type.INT) {
+                    accumulate(a, g, (long) cursor.getInt(field));
+                } else {
+                    accumulate(a, g, cursor.getLong(field));
+                }
+            }
+        }
+
+        private void accumulate(int a, int g, long value) {
+            long [] values = longs[a];
+            if(!present[a].get(g)) {
+                present[a].set(g);
+                values[g] = value;
+                return;
+            }
+            switch (aggregates[a].function) {
+                case SUM:
+                    values[g] += value;
+                    break;
+                case MIN:
+                    values[g] = Math.min(values[g], value);
+                    break;
+                default:
+                    values[g] = Math.max(values[g], value);
+            }
+        }
+
+        private void accumulate(int a, int g, double value) {
+            double [] values = doubles[a];
+            if(!present[a].get(g)) {
+                present[a].set(g);
+                values[g] = value;
+                return;
+            }
+            switch (aggregates[a].function) {
+                case SUM:
+                    values[g] += value;
+                    break;
+                case MIN:
+                    values[g] = Math.min(values[g], value);
+                    break;
+                default:
+                    values[g] = Math.max(values[g], value);
+            }
+        }
+
+        /**
+         * Add partial result of the same aggregation, new groups are appended in their order
+         */
+        void merge(Result other) {
+            int [] mapping = new int[other.size];
+            for(int og = 0; og<other.size; og++) {
+                int g = mapping[og] = group(other, og);
+                for(int a = 0; a<aggregates.length; a++) {
+                    Function function = aggregates[a].function;
+                    if(function == Function.COUNT) {
+                        longs[a][g] += other.longs[a][og];
+                    } else if(function != Function.COUNT_DISTINCT && other.present[a].get(og)) {
+                        if(doubles[a] != null) accumulate(a, g, other.doubles[a][og]);
+                        else accumulate(a, g, other.longs[a][og]);
+                    }
+                }
+            }
+            for(int a = 0; a<aggregates.length; a++) {
+                DistinctSet set = other.distinct[a];
+                if(set == null) continue;
+                for(int e = 0; e<set.size; e++) {
+                    int g = mapping[set.groups[e]];
+                    if(distinct[a].add(g, set.values[e], set.values[e])) longs[a][g]++;
+                }
+            }
+        }
+
+        public int getGroupCount() {
+            return size;
+        }
+
+        /**
+         * @return key columns followed by aggregate names
+         */
+        public String [] getColumnNames() {
+            String [] names = Arrays.copyOf(keyNames, keyCount + aggregates.length);
+            for(int a = 0; a<aggregates.length; a++) names[keyCount + a] = aggregates[a].name;
+            return names;
+        }
+
+        /**
+         * @return index of group with such keys or -1
+         */
+        public int find(String... key) {
+            if(key.length != keyCount) throw new IllegalArgumentException("Expected " + keyCount + " key values");
+            int h = 1;
+            for(String k : key) h = 31 * h + CsvValueCache.hash(k);
+            h ^= h >>> 16;
+            int mask = table.length - 1;
+            for(int i = h & mask, slot; (slot = table[i]) != 0; i = (i + 1) & mask) {
+                int g = slot - 1;
+                if(hashes[g] == h && Arrays.equals(key, Arrays.copyOfRange(keys, g * keyCount, (g + 1) * keyCount))) return g;
+            }
+            return -1;
+        }
+
+        public String getKey(int group, int keyIndex) {
+            check(group);
+            if(keyIndex < 0 || keyIndex >= keyCount) throw new IndexOutOfBoundsException("Key " + keyIndex + " of " + keyCount);
+            return keys[group * keyCount + keyIndex];
+        }
+
+        private void check(int group) {
+            if(group < 0 || group >= size) throw new IndexOutOfBoundsException("Group " + group + " of " + size);
+        }
+
+        private int aggregate(String name) {
+            for(int a = 0; a<aggregates.length; a++) {
+                if(aggregates[a].name.equals(name)) return a;
+            }
+            throw new IllegalArgumentException("No aggregate " + name);
+        }
+
+        /**
+         * @return true if sum, min or max of the group has no values
+         */
+        public boolean isNull(int group, String name) {
+            check(group);
+            int a = aggregate(name);
+            return present[a] != null && !present[a].get(group);
+        }
+
+        public long getLong(int group, String name) {
+            check(group);
+            int a = aggregate(name);
+            return longs[a] != null ? longs[a][group] : (long) doubles[a][group];
+        }
+
+        public double getDouble(int group, String name) {
+            check(group);
+            int a = aggregate(name);
+            return doubles[a] != null ? doubles[a][group] : longs[a][group];
+        }
+
+        /**
+         * Write header and row of each group
+         */
+        public void write(CsvWriter writer) throws CsvException {
+            writer.write(getColumnNames());
+            for(int g = 0; g<size; g++) {
+                writer.startRow();
+                for(int k = 0; k<keyCount; k++) writer.writeValue(keys[g * keyCount + k]);
+                for(int a = 0; a<aggregates.length; a++) {
+                    if(present[a] != null && !present[a].get(g)) writer.writeValue((String) null);
+                    else if(doubles[a] != null) writer.writeValue(doubles[a][g]);
+                    else writer.writeValue(longs[a][g]);
+                }
+                writer.endRow();
+            }
+        }
+    }
+}
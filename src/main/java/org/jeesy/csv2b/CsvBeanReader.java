@@ -16,17 +16,18 @@
 package org.jeesy.csv2b;
 
 import org.jeesy.classinfo.ClassInfo;
-import org.jeesy.classinfo.ClassInfoScanner;
 import org.jeesy.classinfo.TypeInfo;
 import org.jeesy.classinfo.converter.api.ConversionException;
-import org.jeesy.classinfo.converter.api.Converter;
-import org.jeesy.classinfo.converter.api.StringParser;
-import org.jeesy.classinfo.selector.PropertyHandle;
-import org.jeesy.classinfo.selector.PropertySelector;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Read beans from csv stream
@@ -40,34 +41,122 @@ public class CsvBeanReader<T> extends CsvReader implements Iterable<T> {
     //this allow to hold defaults in bean even when empty column specified in csv
     private boolean skipSettingNullValues = true;
     private boolean strictSize = false;
+    private CsvBindingPlan<T> plan;
+    private final BeanColumnProcessor columnProcessor = new BeanColumnProcessor();
+    private Executor conversionExecutor;
+    private boolean ordered = true;
+    private int batchSize = CsvBeanSpliterator.BATCH_UNIT;
+    //mapped columns read while beans are built, null if projection is set explicitly
+    private boolean [] beanProjection;
+
     public CsvBeanReader(Class<T> beanType, Reader reader, String [] header, CsvModel model) throws CsvException {
         super(reader, model);
-        classInfo = ClassInfoScanner.classInfo(beanType);
-
-        if(header == null)
-            this.header = classInfo.getIndex(CsvIndex.class).getHeader();
-
+        plan = model.bindingPlan(beanType, header);
+        classInfo = plan.getClassInfo();
+        this.header = plan.getHeader();
+        projectMappedColumns();
     }
 
     public CsvBeanReader(Class<T> beanType, Reader reader, boolean useHeaderFromFile, CsvModel model) throws CsvException {
         super(reader, model);
-        classInfo = ClassInfoScanner.classInfo(beanType);
+        plan = model.bindingPlan(beanType, useHeaderFromFile ? readRow() : null);
+        classInfo = plan.getClassInfo();
+        header = plan.getHeader();
+        projectMappedColumns();
+    }
+
+    /**
+     * Create reader over given tokenizer, header is taken from the first row if useHeaderFromFile is set
+     */
+    CsvBeanReader(Class<T> beanType, CsvTokenizer tokenizer, boolean useHeaderFromFile, CsvModel model) throws CsvException {
+        super(tokenizer, model);
+        plan = model.bindingPlan(beanType, useHeaderFromFile ? readRow() : null);
+        classInfo = plan.getClassInfo();
+        header = plan.getHeader();
+        projectMappedColumns();
+    }
+
+    /**
+     * Create reader what shares already compiled bindings
+     */
+    CsvBeanReader(CsvTokenizer tokenizer, CsvBindingPlan<T> plan, CsvModel model) {
+        super(tokenizer, model);
+        this.classInfo = plan.getClassInfo();
+        this.header = plan.getHeader();
+        this.plan = plan;
+        projectMappedColumns();
+    }
+
+    /**
+     * Skip columns what are not mapped by {@link CsvIndex} without creating strings for them while beans are read.
+     * Columns after the header are still read to report them as errors, rows returned by readRow keep all columns.
+     * This is the default, {@link #setProjection(int...)} replaces it for both beans and rows.
+     */
+    public void projectMappedColumns() {
+        beanProjection = ignoreUnknownColumns ? plan.mappedColumns() : null;
+        setProjection(null, false);
+    }
 
-        if(useHeaderFromFile) header = readRow();
-        else header = classInfo.getIndex(CsvIndex.class).getHeader();
+    @Override
+    public void setProjection(int... colNums) {
+        beanProjection = null;
+        super.setProjection(colNums);
     }
 
+    /**
+     * Read raw row to build bean from it later by {@link #toBean(int, String[], RowHandler)}
+     */
+    boolean readBeanRow(RowHandler<String[]> rowHandler) {
+        if(beanProjection == null) return readRow(rowHandler);
+        setProjection(beanProjection, true);
+        try {
+            return readRow(rowHandler);
+        } finally {
+            setProjection(null, false);
+        }
+    }
 
     /**
-     * Read beans till row handler returns true in onValue and onError or IOException occurred
+     * Read beans till row handler returns true in onValue and onError or IOException occurred.
+     * If conversion executor is set rows are parsed on the current thread and converted to beans on executor,
+     * handler is still called from the current thread only.
      * @param rowHandler handler to accept values and errors
      * @return rowHandler parameter
      */
     public RowHandler<T> readBeans(final RowHandler<T> rowHandler) {
+        if(conversionExecutor != null) {
+            int parallelism = conversionExecutor instanceof ForkJoinPool ?
+                    ((ForkJoinPool) conversionExecutor).getParallelism() : Runtime.getRuntime().availableProcessors();
+            return new CsvConversionPipeline<>(this, conversionExecutor, ordered, batchSize, parallelism * 2).readBeans(rowHandler);
+        }
         while(readOne(rowHandler));
         return rowHandler;
     }
 
+    /**
+     * Executor to convert batches of rows to beans in {@link #readBeans(RowHandler)},
+     * e.g. {@link ForkJoinPool#commonPool()} or virtual thread executor. Null to convert on the reading thread.
+     */
+    public void setConversionExecutor(Executor conversionExecutor) {
+        this.conversionExecutor = conversionExecutor;
+    }
+
+    /**
+     * Deliver beans converted on executor in file order, true by default.
+     * In unordered mode batches are delivered in order they are converted.
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * Number of rows converted as single task
+     */
+    public void setBatchSize(int batchSize) {
+        if(batchSize <= 0) throw new IllegalArgumentException("Batch size should be positive");
+        this.batchSize = batchSize;
+    }
+
     /**
      * Read single bean from csv stream
      * @return new instance of type T filled with values from csv row
@@ -89,88 +178,216 @@ public class CsvBeanReader<T> extends CsvReader implements Iterable<T> {
     private static final TypeInfo<String> STRING_TYPE_INFO = TypeInfo.forClass(String.class);
 
     /**
-     * Read bean from csv stream passing values and errors to rowHandler
-     * @param rowHandler to accept errors and constructed bean instance
-     * @return true if some data filled without errors
+     * Convert column value and set it to the bean using compiled bindings.
+     * Primitive properties are parsed from chars and set without boxing,
+     * other values go through conversion service.
+     * Uses only immutable reader state, so can be called from several threads.
+     * @return false if handler asked to stop
      */
-    public boolean readOne(final RowHandler<T> rowHandler) {
-        final CsvIndex csvIndex = classInfo.getIndex(CsvIndex.class);
-        final T instance;
+    @SuppressWarnings("unchecked")
+    private boolean setColumn(T instance, int rowNum, int colNum, CharSequence value, RowHandler<T> rowHandler, RowTimer timer) {
+        //handler may rethrow errors, so they are reported outside of try
+        if(colNum > plan.size()) return columnError(rowHandler, new CsvException(rowNum, colNum, new RuntimeException("Too much columns")));
+        CsvBindingPlan.Column column = plan.column(colNum);
+        if(column == null) {
+            return ignoreUnknownColumns || columnError(rowHandler, new CsvException(rowNum, colNum, new RuntimeException("Property not found by header " + header[colNum-1])));
+        }
+        if(column.error != null) return columnError(rowHandler, new CsvException(rowNum, colNum, column.error));
         try {
-            instance = classInfo.getType().newInstance();
+            long start = timer != null ? System.nanoTime() : 0;
+            //primitives are parsed and set in one step, it is timed as conversion
+            if(column.primitiveParser != null) {
+                setPrimitive(instance, column, value);
+                if(timer != null) timer.convertNanos += System.nanoTime() - start;
+                return true;
+            }
+            if(column.parser == null) throw new ConversionException(String.valueOf(value), STRING_TYPE_INFO, column.typeInfo, "Cannot find converter from String to ");
+            Object val;
+            if(column.cache != null && value != null && (value.length() > 0 || !column.nullIfEmpty)) {
+                val = cachedValue(column, value);
+            } else {
+                String str = value == null ? null : value.toString();
+                if(str != null && str.isEmpty() && column.nullIfEmpty) {
+                    str = null;
+                }
+                val = column.parser.convert(str, STRING_TYPE_INFO, column.typeInfo);
+            }
+            if(timer != null) {
+                long now = System.nanoTime();
+                timer.convertNanos += now - start;
+                start = now;
+            }
+            if(val != null || !skipSettingNullValues)
+                column.accessor.set(instance, val);
+            else
+                column.accessor.createOwners(instance);
+            if(timer != null) timer.setNanos += System.nanoTime() - start;
+
+            return true;
+        } catch(ConversionException e) {
+            return columnError(rowHandler, new CsvException(rowNum, colNum, e));
+        } catch(Exception e) {
+            return columnError(rowHandler, new CsvException(rowNum, colNum, e));
+        }
+    }
+
+    private boolean columnError(RowHandler<T> rowHandler, CsvException e) {
+        if(metrics != null) {
+            int col = e.getCol();
+            metrics.conversionError(col > 0 && col <= header.length ? header[col - 1] : "#" + col);
+        }
+        return rowHandler.onError(e);
+    }
+
+    /**
+     * Take canonical value from column cache, string is created and converted only on cache miss.
+     * Converted values of mutable types are not shared, they are converted from canonical string each time.
+     */
+    @SuppressWarnings("unchecked")
+    private Object cachedValue(CsvBindingPlan.Column column, CharSequence value) throws ConversionException {
+        CsvValueCache.Entry entry = column.cache.get(value);
+        if(entry == null) {
+            String str = value.toString();
+            Object val = column.parser.convert(str, STRING_TYPE_INFO, column.typeInfo);
+            entry = column.cache.put(str, column.cacheConverted ? val : null);
+            if(!column.cacheConverted) return val;
+            return entry.value;
+        }
+        if(column.cacheConverted) return entry.value;
+        return column.parser.convert(entry.key, STRING_TYPE_INFO, column.typeInfo);
+    }
+
+    /**
+     * Parse primitive value from chars. Empty value is treated as null and leaves the default.
+     */
+    private void setPrimitive(T instance, CsvBindingPlan.Column column, CharSequence value) throws ConversionException {
+        int length = value == null ? 0 : value.length();
+        if(length == 0 && (column.nullIfEmpty || value == null)) {
+            column.accessor.createOwners(instance);
+            return;
+        }
+        try {
+            switch (column.primitiveParser) {
+                case INT:
+                    column.accessor.setInt(instance, CsvNumbers.parseInt(value, 0, length));
+                    break;
+                case LONG:
+                    column.accessor.setLong(instance, CsvNumbers.parseLong(value, 0, length));
+                    break;
+                case DOUBLE:
+                    column.accessor.setDouble(instance, CsvNumbers.parseDouble(value, 0, length));
+                    break;
+                case BOOLEAN:
+                    column.accessor.setBoolean(instance, CsvNumbers.parseBoolean(value, 0, length));
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            throw new ConversionException(value.toString(), STRING_TYPE_INFO, column.typeInfo, "Cannot parse number from");
+        }
+    }
+
+    private T newInstance() {
+        try {
+            return classInfo.getType().newInstance();
         } catch (IllegalAccessException|InstantiationException e) {
             throw new RuntimeException(e);
         }
+    }
+
+    /**
+     * Fill bean instance with column values using compiled bindings
+     */
+    private final class BeanColumnProcessor implements CharsColumnProcessor {
+        private T instance;
+        private RowHandler<T> rowHandler;
+
+        @Override
+        public boolean onValue(int rowNum, int colNum, String value) {
+            return setColumn(instance, rowNum, colNum, value, rowHandler, rowTimer.active ? rowTimer : null);
+        }
+
+        @Override
+        public boolean onChars(int rowNum, int colNum, CharSequence value) {
+            return setColumn(instance, rowNum, colNum, value, rowHandler, rowTimer.active ? rowTimer : null);
+        }
+    }
+
+    /**
+     * Build bean from the row already read by {@link #readRow(RowHandler)}.
+     * Reports values and errors the same way {@link #readOne(RowHandler)} does,
+     * can be called from other threads while reader continues parsing.
+     * @param rowNum row number reported by readRow
+     * @param row column values
+     * @param rowHandler to accept errors and constructed bean instance
+     * @return true if bean filled without errors and handler accepted it
+     */
+    public boolean toBean(int rowNum, String [] row, RowHandler<T> rowHandler) {
+        T instance = newInstance();
+        for(int i = 0; i<row.length; i++) {
+            if(!setColumn(instance, rowNum, i+1, row[i], rowHandler, null)) return false;
+        }
+        return rowHandler.onValue(rowNum-1, instance);
+    }
+
+    /**
+     * Read bean from csv stream passing values and errors to rowHandler
+     * @param rowHandler to accept errors and constructed bean instance
+     * @return true if some data filled without errors
+     */
+    public boolean readOne(final RowHandler<T> rowHandler) {
+        final T instance = newInstance();
         boolean ret;
+        columnProcessor.instance = instance;
+        columnProcessor.rowHandler = rowHandler;
+        if(beanProjection != null) setProjection(beanProjection, true);
         try {
-            ret = realReadRow(new ColumnProcessor() {
-                @SuppressWarnings("unchecked")
-                @Override
-                public boolean onValue(int rowNum, int colNum, String value) {
-                    try {
-                        if(colNum > header.length) throw new RuntimeException("Too much columns");
-                        String columnName = header[colNum-1];
-                        CsvIndex.CsvProp prop = csvIndex.getFieldNameByColumnName(columnName);
-                        if(prop == null) {
-                            return ignoreUnknownColumns || rowHandler.onError(new CsvException(rowNum, colNum, new RuntimeException("Property not found by header " + columnName)));
-                        }
-                        String propertyName = prop.getPath();
-                        PropertySelector selector = PropertySelector.parse(propertyName).createNullElements();
-
-                        PropertyHandle handle = null;
-                        try {
-                            handle = selector.resolve(instance);
-                        } catch(Exception e) {
-                            return rowHandler.onError(new CsvException(rowNum, colNum, e));
-                        }
-
-
-                        Converter<String, Object> converter = getModel().getConverter().converterFor(String.class, handle.getInfo().getType());
-                        CsvCol csvCol = handle.getInfo().getAnnotation(CsvCol.class);
-                        if(csvCol != null && !StringParser.class.equals(csvCol.parser())) {
-                            StringParser<Object> parser = getModel().getConverter().converterByType(csvCol.parser());
-                            if(parser != null) converter = parser;
-                        }
-                        if(converter == null) throw new ConversionException(value, STRING_TYPE_INFO, handle.getInfo().getTypeInfo(), "Cannot find converter from String to ");
-                        if(value != null && value.isEmpty() && (csvCol == null || csvCol.nullIfEmpty())) {
-                            value = null;
-                        }
-                        Object val = converter.convert(value, STRING_TYPE_INFO, handle.getInfo().getTypeInfo());
-                        if(val != null || !skipSettingNullValues)
-                            handle.setValue(val);
-
-                        return true;
-                    } catch(ConversionException e) {
-                        return rowHandler.onError(new CsvException(rowNum, colNum, e));
-                    } catch(Exception e) {
-                        return rowHandler.onError(new CsvException(rowNum, colNum, e));
-                    }
-                }
-            });
+            ret = realReadRow(columnProcessor);
         } catch (IOException e) {
             rowHandler.onError(new CsvException(rowNum-1, colNum, e));
             return false;
+        } finally {
+            if(beanProjection != null) setProjection(null, false);
+            columnProcessor.instance = null;
+            columnProcessor.rowHandler = null;
         }
         return ret && rowHandler.onValue(rowNum-1, instance);
     }
 
+    /**
+     * Lazy iterator over remaining beans.
+     * Errors are thrown as {@link CsvException} and finish the iteration.
+     */
     @Override
     public Iterator<T> iterator() {
-        return new Iterator<T>() {
-            @Override
-            public boolean hasNext() {
-                return false;
-            }
+        return Spliterators.iterator(spliterator());
+    }
 
-            @Override
-            public T next() {
-                return readBean();
-            }
+    /**
+     * Spliterator over remaining beans.
+     * Splits are made from batches of raw rows, so parsing stays sequential and
+     * bean conversion of the split batches can be done in parallel.
+     * Errors are thrown as {@link CsvException}.
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new CsvBeanSpliterator<>(this);
+    }
 
-            @Override
-            public void remove() {
-                throw new UnsupportedOperationException("Remove is not supported here");
-            }
-        };
+    /**
+     * Sequential stream of remaining beans
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Parallel stream of remaining beans, csv is parsed sequentially and beans are built in parallel
+     */
+    public Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    public String [] getHeader() {
+        return header;
     }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over beans of {@link CsvBeanReader}.
+ * Beans are read one by one on advance. Split reads batch of raw rows and returns
+ * spliterator what builds beans of the batch, so conversion can run on other threads.
+ * Batch size grows with each split the same way JDK iterator based spliterators do.
+ * @author Artem Mironov
+ */
+final class CsvBeanSpliterator<T> implements Spliterator<T> {
+    static final int BATCH_UNIT = 1 << 10;
+    static final int MAX_BATCH = 1 << 25;
+
+    private final CsvBeanReader<T> reader;
+    private int batch = 0;
+    private boolean done = false;
+
+    CsvBeanSpliterator(CsvBeanReader<T> reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Keep the value and throw errors
+     */
+    private static final class ValueHandler<T> implements CsvReader.RowHandler<T> {
+        private T value;
+
+        @Override
+        public boolean onError(CsvException e) {
+            throw e;
+        }
+
+        @Override
+        public boolean onValue(int rowNum, T value) {
+            this.value = value;
+            return true;
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if(done) return false;
+        ValueHandler<T> handler = new ValueHandler<>();
+        try {
+            if(!reader.readOne(handler)) {
+                done = true;
+                return false;
+            }
+        } catch (RuntimeException e) {
+            done = true;
+            throw e;
+        }
+        action.accept(handler.value);
+        return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if(done) return null;
+        int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+        String [][] rows = new String[n][];
+        int [] rowNums = new int[n];
+        CsvReader.ListRowHandler raw = new CsvReader.ListRowHandler();
+        int count = 0;
+        CsvException failure = null;
+        try {
+            while(count < n && reader.readBeanRow(raw)) {
+                rows[count] = raw.getRows().get(count);
+                rowNums[count] = raw.getLastRowNum();
+                count++;
+            }
+        } catch (CsvException e) {
+            failure = e;
+        }
+        if(count < n) done = true;
+        if(count == 0 && failure == null) return null;
+        batch = count;
+        return new BatchSpliterator<>(reader, rows, rowNums, 0, count, failure);
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    /**
+     * Builds beans from rows read in advance
+     */
+    private static final class BatchSpliterator<T> implements Spliterator<T> {
+        private final CsvBeanReader<T> reader;
+        private final String [][] rows;
+        private final int [] rowNums;
+        private int index;
+        private final int fence;
+        //error what stopped batch reading, thrown after all rows of the batch
+        private CsvException failure;
+
+        BatchSpliterator(CsvBeanReader<T> reader, String [][] rows, int [] rowNums, int index, int fence, CsvException failure) {
+            this.reader = reader;
+            this.rows = rows;
+            this.rowNums = rowNums;
+            this.index = index;
+            this.fence = fence;
+            this.failure = failure;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if(index < fence) {
+                ValueHandler<T> handler = new ValueHandler<>();
+                int i = index++;
+                reader.toBean(rowNums[i], rows[i], handler);
+                rows[i] = null;
+                action.accept(handler.value);
+                return true;
+            }
+            if(failure != null) {
+                CsvException e = failure;
+                failure = null;
+                throw e;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int lo = index;
+            int mid = (lo + fence) >>> 1;
+            if(lo >= mid) return null;
+            index = mid;
+            return new BatchSpliterator<>(reader, rows, rowNums, lo, mid, null);
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | SIZED | SUBSIZED;
+        }
+    }
+}
@@ -15,18 +15,13 @@
  */
 package org.jeesy.csv2b;
 
-import org.jeesy.classinfo.ClassInfo;
-import org.jeesy.classinfo.PropertyInfo;
 import org.jeesy.classinfo.TypeInfo;
 import org.jeesy.classinfo.converter.api.ConversionException;
 import org.jeesy.classinfo.converter.api.Converter;
-import org.jeesy.classinfo.converter.api.StringSerializer;
-import org.jeesy.classinfo.selector.PropertyHandle;
-import org.jeesy.classinfo.selector.PropertySelector;
 
 import java.io.Writer;
-
-import static org.jeesy.classinfo.ClassInfoScanner.classInfo;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Writer to serialize beans to csv.
@@ -36,21 +31,46 @@ import static org.jeesy.classinfo.ClassInfoScanner.classInfo;
  * @author Artem Mironov
  */
 public class CsvBeanWriter<T> extends CsvWriter {
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
     private Class<T> beanType;
+    private CsvBindingPlan<?> plan;
+    private Executor conversionExecutor;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
     public CsvBeanWriter(Class<T> beanType, Writer writer, CsvModel model) {
         super(writer, model);
         this.beanType = beanType;
     }
 
+    public CsvBeanWriter(Class<T> beanType, Writer writer, CsvModel model, int bufferSize) {
+        super(writer, model, bufferSize);
+        this.beanType = beanType;
+    }
+
+    /**
+     * Executor to render batches of beans in {@link #writeBeans(Iterable)}, e.g. {@link ForkJoinPool#commonPool()}.
+     * Rows are still written in the order of beans. Null to render on the writing thread.
+     */
+    public void setConversionExecutor(Executor conversionExecutor) {
+        this.conversionExecutor = conversionExecutor;
+    }
+
+    /**
+     * Number of beans rendered as single task
+     */
+    public void setBatchSize(int batchSize) {
+        if(batchSize <= 0) throw new IllegalArgumentException("Batch size should be positive");
+        this.batchSize = batchSize;
+    }
+
     /**
      * Write header for bean type.
      * Use it before other write methods to produce csv header
      * @throws CsvException for any exception occurred
      */
     public void writeHeader() throws CsvException {
-        ClassInfo<T> ci = classInfo(beanType);
-        CsvIndex idx = ci.getIndex(CsvIndex.class);
-        write(idx.getHeader());
+        write(model.bindingPlan(beanType, null).getHeader());
     }
 
     /**
@@ -59,15 +79,71 @@ public class CsvBeanWriter<T> extends CsvWriter {
      * @throws CsvException for any exception occurred
      */
     public <B extends T> void writeBean(B bean) throws CsvException {
-        write(beanToArray(bean));
+        CsvBindingPlan<?> plan = planFor(bean.getClass());
+        startRow();
+        try {
+            for(int i = 0; i<plan.size(); i++) {
+                CsvBindingPlan.Column column = checkedColumn(plan, i);
+                if(column.primitiveSerializer != null) {
+                    writePrimitive(column, bean);
+                } else {
+                    String val = toString(column, column.accessor.get(bean));
+                    writeValue(val == null ? "" : val);
+                }
+            }
+        } catch (RuntimeException|Error e) {
+            discardRow();
+            throw e;
+        }
+        endRow();
     }
 
     /**
-     * Write sequence of beans, each on own row
+     * Format primitive property without boxing, property of null embedded bean is written empty
+     */
+    private void writePrimitive(CsvBindingPlan.Column column, Object bean) {
+        Object target = column.accessor.target(bean);
+        if(target == null) {
+            writeValue("");
+            return;
+        }
+        switch (column.primitiveSerializer) {
+            case INT:
+                writeValue(column.accessor.getInt(target));
+                break;
+            case LONG:
+                writeValue(column.accessor.getLong(target));
+                break;
+            case DOUBLE:
+                writeValue(column.accessor.getDouble(target));
+                break;
+            case BOOLEAN:
+                writeValue(column.accessor.getBoolean(target));
+                break;
+        }
+    }
+
+    private static CsvBindingPlan.Column checkedColumn(CsvBindingPlan<?> plan, int i) {
+        CsvBindingPlan.Column column = plan.column(i + 1);
+        if(column == null || column.error != null)
+            throw new IllegalStateException("Cannot find property for column " + plan.getHeader()[i], column == null ? null : column.error);
+        return column;
+    }
+
+    /**
+     * Write sequence of beans, each on own row.
+     * If conversion executor is set batches of beans are rendered in parallel, at most two batches per thread are kept in memory.
+     * On error rows of beans before the failed one are written.
      * @param beans sequence of beans
      * @throws CsvException for any exception occurred
      */
     public <B extends T> void writeBeans(Iterable<B> beans) throws CsvException {
+        if(conversionExecutor != null) {
+            int parallelism = conversionExecutor instanceof ForkJoinPool ?
+                    ((ForkJoinPool) conversionExecutor).getParallelism() : Runtime.getRuntime().availableProcessors();
+            new CsvWritePipeline<>(this, beanType, conversionExecutor, batchSize, parallelism * 2).writeBeans(beans.iterator());
+            return;
+        }
         for(B bean : beans) {
             writeBean(bean);
         }
@@ -77,37 +153,42 @@ public class CsvBeanWriter<T> extends CsvWriter {
      * Serialize bean to string array
      */
     public <B extends T> String [] beanToArray(B bean) {
-        ClassInfo<B> ci = classInfo((Class<B>)bean.getClass());
-        CsvIndex idx = ci.getIndex(CsvIndex.class);
-        String [] header = idx.getHeader();
-        String [] res = new String[header.length];
+        CsvBindingPlan<?> plan = planFor(bean.getClass());
+        String [] res = new String[plan.size()];
         for(int i = 0; i<res.length; i++) {
-            PropertySelector selector = PropertySelector.parse(idx.getFieldNameByColumnName(header[i]).getPath());
-            PropertyHandle handle = selector.resolve(bean);
-            if(handle == null) throw new IllegalStateException("Cannot find property by selector "+selector);
-            Object rawVal = handle.getValue();
-            String val = toString(handle.getInfo(), rawVal);
+            CsvBindingPlan.Column column = checkedColumn(plan, i);
+            Object rawVal = column.accessor.get(bean);
+            String val = toString(column, rawVal);
             if(val == null) val = "";
             res[i] = val;
         }
         return res;
     }
 
+    /**
+     * Bindings for the last serialized runtime type, usually all beans have the same type
+     */
+    private CsvBindingPlan<?> planFor(Class<?> type) {
+        CsvBindingPlan<?> p = plan;
+        if(p == null || p.getClassInfo().getType() != type) {
+            p = plan = model.bindingPlan(type, null);
+        }
+        return p;
+    }
+
     private static final TypeInfo<String> STRING_TYPE_INFO = TypeInfo.forClass(String.class);
 
     @SuppressWarnings("unchecked")
-    private String toString(PropertyInfo pi, Object value) throws CsvException {
-        Converter<Object, String> converter = model.getConverter().converterFor(pi.getType(), String.class);
-        CsvCol csvCol = pi.getAnnotation(CsvCol.class);
-        if(csvCol != null && !StringSerializer.class.equals(csvCol.serializer())) {
-            converter = model.getConverter().converterByType(csvCol.serializer());
-        }
+    private String toString(CsvBindingPlan.Column column, Object value) throws CsvException {
+        Converter<Object, String> converter = column.serializer;
         if(converter == null) throw new IllegalStateException("Converter is null");
         try {
-            return converter.convert(value, pi.getTypeInfo(), STRING_TYPE_INFO);
+            return converter.convert(value, column.typeInfo, STRING_TYPE_INFO);
         } catch(ConversionException e) {
+            if(metrics != null) metrics.conversionError(column.name);
             throw new CsvException(rowNum, colNum, e);
         } catch(Exception e) {
+            if(metrics != null) metrics.conversionError(column.name);
             throw new CsvException(rowNum, colNum, e);
         }
     }
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import org.jeesy.classinfo.ClassInfo;
+import org.jeesy.classinfo.PropertyInfo;
+import org.jeesy.classinfo.TypeInfo;
+import org.jeesy.classinfo.converter.api.ConversionService;
+import org.jeesy.classinfo.converter.api.Converter;
+import org.jeesy.classinfo.converter.api.StringParser;
+import org.jeesy.classinfo.converter.api.StringSerializer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static org.jeesy.classinfo.converter.DefaultConverter.defaultConverter;
+
+/**
+ * Column to bean property bindings compiled once for bean type and header.
+ * Holds everything what doesn't depend on the row being processed, so per cell work is only an array lookup.
+ * Used both to read beans and to serialize them.
+ * @author Artem Mironov
+ */
+final class CsvBindingPlan<T> {
+    private final ClassInfo<T> classInfo;
+    private final String [] header;
+    private final Column [] columns;
+
+    /**
+     * Primitive property types what are parsed and formatted without boxing
+     */
+    enum Primitive {
+        INT, LONG, DOUBLE, BOOLEAN;
+
+        static Primitive of(Class<?> type) {
+            if(type == int.class) return INT;
+            if(type == long.class) return LONG;
+            if(type == double.class) return DOUBLE;
+            if(type == boolean.class) return BOOLEAN;
+            return null;
+        }
+    }
+
+    static final class Column {
+        final String name;
+        final String path;
+        final CsvPropertyAccessor accessor;
+        final PropertyInfo info;
+        final TypeInfo typeInfo;
+        final Converter<String, Object> parser;
+        final Converter<Object, String> serializer;
+        final boolean nullIfEmpty;
+        //set for primitive properties converted by library default converters
+        final Primitive primitiveParser;
+        final Primitive primitiveSerializer;
+        //repeated values cache, null if disabled
+        final CsvValueCache cache;
+        //whether converted values are immutable and can be shared
+        final boolean cacheConverted;
+        //reported on each value of the column if property can't be resolved
+        final Exception error;
+
+        @SuppressWarnings("unchecked")
+        Column(String name, String path, ClassInfo<?> classInfo, ConversionService conversionService, int cacheSize) {
+            this.name = name;
+            this.path = path;
+            PropertyInfo pi = null;
+            CsvPropertyAccessor acc = null;
+            Exception err = null;
+            try {
+                pi = propertyInfo(classInfo, path);
+                acc = CsvPropertyAccessor.forPath(classInfo.getType(), path);
+            } catch(Exception e) {
+                err = e;
+            }
+            this.info = pi;
+            this.accessor = acc;
+            this.error = err;
+            if(err != null) {
+                this.typeInfo = null;
+                this.parser = null;
+                this.serializer = null;
+                this.nullIfEmpty = true;
+                this.primitiveParser = null;
+                this.primitiveSerializer = null;
+                this.cache = null;
+                this.cacheConverted = false;
+                return;
+            }
+            this.typeInfo = pi.getTypeInfo();
+            Primitive primitive = Primitive.of(acc.getType());
+            Converter<String, Object> converter = conversionService.converterFor(String.class, pi.getType());
+            CsvCol csvCol = pi.getAnnotation(CsvCol.class);
+            Primitive primitiveParser = isDefault(conversionService, converter, String.class, pi.getType()) ? primitive : null;
+            if(csvCol != null && !StringParser.class.equals(csvCol.parser())) {
+                StringParser<Object> parser = conversionService.converterByType(csvCol.parser());
+                if(parser != null) {
+                    converter = parser;
+                    primitiveParser = null;
+                }
+            }
+            this.parser = converter;
+            this.primitiveParser = primitiveParser;
+            Converter<Object, String> toString = conversionService.converterFor(pi.getType(), String.class);
+            Primitive primitiveSerializer = isDefault(conversionService, toString, pi.getType(), String.class) ? primitive : null;
+            if(csvCol != null && !StringSerializer.class.equals(csvCol.serializer())) {
+                toString = conversionService.converterByType(csvCol.serializer());
+                primitiveSerializer = null;
+            }
+            this.serializer = toString;
+            this.primitiveSerializer = primitiveSerializer;
+            this.nullIfEmpty = csvCol == null || csvCol.nullIfEmpty();
+            if(csvCol != null) cacheSize = Math.max(cacheSize, csvCol.cacheSize());
+            this.cache = cacheSize > 0 && primitiveParser == null ? new CsvValueCache(cacheSize) : null;
+            this.cacheConverted = isImmutable(pi.getType());
+        }
+
+        /**
+         * Fast paths format values as default converters do, converters of custom conversion service should be kept
+         */
+        private static boolean isDefault(ConversionService conversionService, Converter<?, ?> converter, Class<?> src, Class<?> dst) {
+            if(conversionService == defaultConverter()) return true;
+            Converter<?, ?> standard = defaultConverter().converterFor(src, dst);
+            return converter != null && standard != null && converter.getClass() == standard.getClass();
+        }
+
+        private static boolean isImmutable(Class<?> type) {
+            return type == String.class || type.isEnum() || type == Boolean.class || type == Character.class
+                    || type == Integer.class || type == Long.class || type == Short.class || type == Byte.class
+                    || type == Double.class || type == Float.class
+                    || type == BigDecimal.class || type == BigInteger.class;
+        }
+    }
+
+    private CsvBindingPlan(ClassInfo<T> classInfo, String [] header, Column [] columns) {
+        this.classInfo = classInfo;
+        this.header = header;
+        this.columns = columns;
+    }
+
+    /**
+     * Compile bindings for header columns without value caches
+     * @param header column names, unknown columns get null binding
+     */
+    static <T> CsvBindingPlan<T> compile(ClassInfo<T> classInfo, String [] header, ConversionService conversionService) {
+        return compile(classInfo, header, conversionService, null);
+    }
+
+    /**
+     * Compile bindings to read columns, with value caches configured by model and {@link CsvCol#cacheSize()}
+     */
+    static <T> CsvBindingPlan<T> compile(ClassInfo<T> classInfo, String [] header, CsvModel model) {
+        return compile(classInfo, header, model.getConverter(), model);
+    }
+
+    private static <T> CsvBindingPlan<T> compile(ClassInfo<T> classInfo, String [] header, ConversionService conversionService, CsvModel model) {
+        CsvIndex csvIndex = classInfo.getIndex(CsvIndex.class);
+        Column [] columns = new Column[header.length];
+        for(int i = 0; i<header.length; i++) {
+            CsvIndex.CsvProp prop = csvIndex.getFieldNameByColumnName(header[i]);
+            if(prop != null) {
+                int cacheSize = model == null ? 0 : model.getColumnCacheSize(header[i]);
+                columns[i] = new Column(header[i], prop.getPath(), classInfo, conversionService, cacheSize);
+            }
+        }
+        return new CsvBindingPlan<>(classInfo, header, columns);
+    }
+
+    /**
+     * Find property info by dot separated path
+     * @throws IllegalStateException if some path element not found
+     */
+    static PropertyInfo propertyInfo(ClassInfo<?> classInfo, String path) {
+        ClassInfo<?> ci = classInfo;
+        PropertyInfo pi = null;
+        for(String name : path.split("\\.")) {
+            if(pi != null) ci = pi.getClassInfo();
+            pi = ci == null ? null : ci.getPropertyInfo(name);
+            if(pi == null) throw new IllegalStateException("Cannot find property " + path + " in " + classInfo.getType());
+        }
+        return pi;
+    }
+
+    ClassInfo<T> getClassInfo() {
+        return classInfo;
+    }
+
+    String [] getHeader() {
+        return header;
+    }
+
+    int size() {
+        return columns.length;
+    }
+
+    /**
+     * @return mask indexed by 1-based column number, true for mapped columns
+     */
+    boolean [] mappedColumns() {
+        boolean [] mask = new boolean[columns.length + 1];
+        for(int i = 0; i<columns.length; i++) mask[i + 1] = columns[i] != null;
+        return mask;
+    }
+
+    /**
+     * @param colNum 1-based column number
+     * @return binding or null if column is not mapped
+     */
+    Column column(int colNum) {
+        return columns[colNum - 1];
+    }
+}
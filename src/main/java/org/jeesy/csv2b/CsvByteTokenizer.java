@@ -0,0 +1,331 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tokenizer over memory mapped file.
+ * Separators, quotes and line ends are found directly in bytes, only fields passed to
+ * the handler are decoded and only when handler asks for content.
+ * Supports UTF-8 and single byte ASCII compatible charsets, where bytes below 0x80 are always ASCII chars.
+ * Large files are mapped by windows, window moves to the start of current field when exhausted.
+ * @author Artem Mironov
+ */
+public class CsvByteTokenizer extends CsvTokenizer {
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final Charset charset;
+    private final long end;
+    private int windowSize;
+    private long base;
+    private MappedByteBuffer window;
+    //view of the window used for bulk copies
+    private ByteBuffer view;
+    private int pos = 0;
+    private int limit = 0;
+    //unescaped field content when it can't be represented as plain window part
+    private byte [] scratch = new byte[256];
+    private final ByteSlice slice = new ByteSlice();
+
+    public CsvByteTokenizer(FileChannel channel, CsvModel model) throws IOException {
+        this(channel, StandardCharsets.UTF_8, model);
+    }
+
+    public CsvByteTokenizer(FileChannel channel, Charset charset, CsvModel model) throws IOException {
+        this(channel, charset, model, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Create tokenizer what reads channel from its current position till the end
+     */
+    public CsvByteTokenizer(FileChannel channel, Charset charset, CsvModel model, int windowSize) throws IOException {
+        this(channel, channel.position(), charset, model, windowSize);
+    }
+
+    /**
+     * Create tokenizer what reads channel from the start position till the end.
+     * Channel position is not used, so the channel can be shared by several tokenizers.
+     */
+    public CsvByteTokenizer(FileChannel channel, long start, Charset charset, CsvModel model, int windowSize) throws IOException {
+        super(model);
+        if(windowSize <= 0) throw new IllegalArgumentException("Window size should be positive");
+        if(!isAsciiCompatible(charset)) throw new IllegalArgumentException("Charset is not supported for byte parsing " + charset);
+        if(separatorChar >= 0x80 || quoteChar >= 0x80) throw new IllegalArgumentException("Separator and quote should be ASCII characters");
+        this.channel = channel;
+        this.charset = charset;
+        this.windowSize = windowSize;
+        this.end = channel.size();
+        if(start < 0 || start > end) throw new IllegalArgumentException("Start position is out of file " + start);
+        map(start);
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        if(StandardCharsets.UTF_8.equals(charset) || StandardCharsets.US_ASCII.equals(charset)) return true;
+        if(!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) return false;
+        String probe = "\r\n,;|\t\"'#azAZ09";
+        return Arrays.equals(probe.getBytes(StandardCharsets.US_ASCII), probe.getBytes(charset));
+    }
+
+    private void map(long from) throws IOException {
+        long size = Math.min(windowSize, end - from);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, from, size);
+        view = window.duplicate();
+        base = from;
+        limit = (int) size;
+    }
+
+    /**
+     * Move window to keepFrom position if there is more data in the file
+     * @return number of bytes window was shifted on
+     */
+    private int fill(int keepFrom) throws IOException {
+        if(base + limit >= end) return 0;
+        if(limit - keepFrom >= windowSize) windowSize = (int) Math.min(Integer.MAX_VALUE, windowSize * 2L);
+        map(base + keepFrom);
+        pos -= keepFrom;
+        return keepFrom;
+    }
+
+    @Override
+    public boolean readRow(FieldHandler handler) throws IOException {
+        if(pos == limit) {
+            fill(pos);
+            if(pos == limit) return false;
+        }
+        rowNum++;
+        colNum = 0;
+        final byte quote = (byte) quoteChar;
+        final byte separator = (byte) separatorChar;
+        final boolean ignoreEmpty = ignoreEmptyLines;
+        MappedByteBuffer b = window;
+        int p = pos;
+        int lim = limit;
+        //field is [start, stop) part of the window till some byte is skipped in the middle,
+        //then it is copied to scratch
+        int start = p;
+        int stop = p;
+        boolean copying = false;
+        int copied = 0;
+        int bits = 0;
+        boolean inQuote = false;
+        boolean delayedQuote = false;
+        boolean anyValue = false;
+        for(;;) {
+            if(p == lim) {
+                pos = p;
+                int shift = fill(copying ? p : start);
+                b = window;
+                lim = limit;
+                p -= shift;
+                start -= shift;
+                stop -= shift;
+                if(p == lim) break;
+            }
+            byte c = b.get(p++);
+            boolean append;
+            if(inQuote) {
+                if(c == quote) {
+                    delayedQuote = true;
+                    inQuote = false;
+                    append = false;
+                } else {
+                    append = true;
+                }
+            } else {
+                append = false;
+                if(c == quote) {
+                    append = delayedQuote;
+                    inQuote = true;
+                } else if(c == separator) {
+                    pos = p;
+                    if(!handler.onField(rowNum, ++colNum, field(start, stop, copying, copied, bits))) return false;
+                    start = stop = p;
+                    copying = false;
+                    copied = 0;
+                    bits = 0;
+                    anyValue = true;
+                } else if(c == '\n') {
+                    if(wasCR) {
+                        wasCR = false;
+                    } else if(colNum > 0 || copied > 0 || stop > start || !ignoreEmpty) {
+                        break;
+                    }
+                } else if(c == '\r') {
+                    wasCR = true;
+                    if(colNum > 0 || copied > 0 || stop > start || !ignoreEmpty) break;
+                } else {
+                    append = true;
+                }
+                delayedQuote = false;
+            }
+            if(append) {
+                bits |= c;
+                if(copying) {
+                    if(copied == scratch.length) scratch = Arrays.copyOf(scratch, copied * 2);
+                    scratch[copied++] = c;
+                } else if(stop == p - 1) {
+                    stop = p;
+                } else if(stop == start) {
+                    start = p - 1;
+                    stop = p;
+                } else {
+                    copying = true;
+                    copied = stop - start;
+                    if(copied + 1 > scratch.length) scratch = new byte[Math.max(scratch.length * 2, copied + 1)];
+                    view.limit(stop).position(start);
+                    view.get(scratch, 0, copied);
+                    scratch[copied++] = c;
+                }
+            }
+        }
+        pos = p;
+        if(inQuote) throw new RuntimeException("Unfinished quote");
+        ByteSlice value = field(start, stop, copying, copied, bits);
+        boolean ret = handler.onField(rowNum, ++colNum, value);
+        return ret && (anyValue || value.length > 0);
+    }
+
+    /**
+     * Consume line feed what finishes CRLF of the previous row.
+     * Tokenizer state after it is the same as on the next line start, so the row boundary position can be compared with other.
+     */
+    void skipPendingLineFeed() throws IOException {
+        if(!wasCR) return;
+        if(pos == limit) fill(pos);
+        if(pos < limit && window.get(pos) == '\n') {
+            pos++;
+            wasCR = false;
+        }
+    }
+
+    /**
+     * Continue reading from the row boundary position with the tokenizer state it had there.
+     * Current window is reused if it contains the position.
+     */
+    void moveTo(long position, int rowNum, boolean wasCR) throws IOException {
+        if(position < 0 || position > end) throw new IllegalArgumentException("Position is out of file " + position);
+        if(position < base || position >= base + limit) map(position);
+        pos = (int) (position - base);
+        colNum = 0;
+        resume(rowNum, wasCR);
+    }
+
+    /**
+     * Jump to the nearest indexed row start before rowNum and skip rows till rowNum is the next one to read
+     */
+    void seek(CsvRowIndex index, int rowNum) throws IOException {
+        if(index.getFileSize() != end) throw new IOException("Row index was built for other file");
+        int entry = index.entryBefore(rowNum);
+        moveTo(index.entryPosition(entry), index.entryRowNum(entry), index.entryWasCR(entry));
+        skipPendingLineFeed();
+        while(this.rowNum < rowNum - 1 && getPosition() < end) {
+            readRow(SKIP_FIELDS);
+            skipPendingLineFeed();
+        }
+    }
+
+    @Override
+    public long getPosition() {
+        return base + pos;
+    }
+
+    private ByteSlice field(int start, int stop, boolean copying, int copied, int bits) {
+        return copying ? slice.set(false, 0, copied, bits >= 0) : slice.set(true, start, stop - start, bits >= 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reusable view of the current field, decoded on demand
+     */
+    private final class ByteSlice implements Slice {
+        private boolean mapped;
+        private int offset;
+        private int length;
+        private boolean ascii;
+        private String decoded;
+        private byte [] bytes = new byte[256];
+
+        ByteSlice set(boolean mapped, int offset, int length, boolean ascii) {
+            this.mapped = mapped;
+            this.offset = offset;
+            this.length = length;
+            this.ascii = ascii;
+            this.decoded = null;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return ascii ? length : toString().length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if(!ascii) return toString().charAt(index);
+            if(index < 0 || index >= length) throw new IndexOutOfBoundsException("Index: " + index);
+            return (char) (mapped ? window.get(offset + index) : scratch[offset + index]);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public void getChars(char [] dst, int dstBegin) {
+            if(!ascii) {
+                String s = toString();
+                s.getChars(0, s.length(), dst, dstBegin);
+            } else if(mapped) {
+                for(int i = 0; i<length; i++) dst[dstBegin + i] = (char) window.get(offset + i);
+            } else {
+                for(int i = 0; i<length; i++) dst[dstBegin + i] = (char) scratch[offset + i];
+            }
+        }
+
+        @Override
+        public String toString() {
+            if(decoded == null) {
+                byte [] src;
+                int off;
+                if(mapped) {
+                    if(bytes.length < length) bytes = new byte[Math.max(bytes.length * 2, length)];
+                    view.limit(offset + length).position(offset);
+                    view.get(bytes, 0, length);
+                    src = bytes;
+                    off = 0;
+                } else {
+                    src = scratch;
+                    off = offset;
+                }
+                decoded = new String(src, off, length, ascii ? StandardCharsets.ISO_8859_1 : charset);
+            }
+            return decoded;
+        }
+    }
+}
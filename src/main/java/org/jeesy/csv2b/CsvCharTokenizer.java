@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Tokenizer over {@link Reader} what reads input by large blocks into char window.
+ * Fields are unescaped in place and passed to handler as slices of the window,
+ * so single read call covers many rows.
+ * @author Artem Mironov
+ */
+public class CsvCharTokenizer extends CsvTokenizer {
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final Reader reader;
+    private char[] buf;
+    private int pos = 0;
+    private int limit = 0;
+    //input position of the window start
+    private long offset = 0;
+    private final CharSlice slice = new CharSlice();
+
+    public CsvCharTokenizer(Reader reader, CsvModel model) {
+        this(reader, model, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvCharTokenizer(Reader reader, CsvModel model, int bufferSize) {
+        super(model);
+        if(bufferSize <= 0) throw new IllegalArgumentException("Buffer size should be positive");
+        this.reader = reader;
+        this.buf = new char[bufferSize];
+    }
+
+    /**
+     * Drop window content before keepFrom and read next block after the rest.
+     * Window grows if there is no room after compaction.
+     * @return number of chars window content was shifted on
+     */
+    private int fill(int keepFrom) throws IOException {
+        if(keepFrom > 0) {
+            System.arraycopy(buf, keepFrom, buf, 0, limit - keepFrom);
+            limit -= keepFrom;
+            pos -= keepFrom;
+            offset += keepFrom;
+        }
+        if(limit == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+        int n;
+        do {
+            n = reader.read(buf, limit, buf.length - limit);
+        } while(n == 0);
+        if(n > 0) limit += n;
+        return keepFrom;
+    }
+
+    @Override
+    public boolean readRow(FieldHandler handler) throws IOException {
+        if(pos == limit) {
+            fill(pos);
+            if(pos == limit) return false;
+        }
+        rowNum++;
+        colNum = 0;
+        final char quote = quoteChar;
+        final char separator = separatorChar;
+        final boolean ignoreEmpty = ignoreEmptyLines;
+        char [] b = buf;
+        int p = pos;
+        int lim = limit;
+        //field content is unescaped in place to [start, w), w never outruns p
+        int start = p;
+        int w = p;
+        boolean inQuote = false;
+        boolean delayedQuote = false;
+        boolean anyValue = false;
+        for(;;) {
+            if(p == lim) {
+                pos = p;
+                int shift = fill(start);
+                b = buf;
+                lim = limit;
+                p -= shift;
+                start -= shift;
+                w -= shift;
+                if(p == lim) break;
+            }
+            char c = b[p++];
+            if(inQuote) {
+                if(c == quote) {
+                    delayedQuote = true;
+                    inQuote = false;
+                } else {
+                    b[w++] = c;
+                }
+            } else {
+                if(c == quote) {
+                    if(delayedQuote) b[w++] = c;
+                    inQuote = true;
+                } else if(c == separator) {
+                    pos = p;
+                    if(!handler.onField(rowNum, ++colNum, slice.set(b, start, w - start))) return false;
+                    start = w = p;
+                    anyValue = true;
+                } else if(c == '\n') {
+                    if(wasCR) {
+                        wasCR = false;
+                    } else if(colNum > 0 || w > start || !ignoreEmpty) {
+                        break;
+                    }
+                } else if(c == '\r') {
+                    wasCR = true;
+                    if(colNum > 0 || w > start || !ignoreEmpty) break;
+                } else {
+                    b[w++] = c;
+                }
+                delayedQuote = false;
+            }
+        }
+        pos = p;
+        if(inQuote) throw new RuntimeException("Unfinished quote");
+        int len = w - start;
+        boolean ret = handler.onField(rowNum, ++colNum, slice.set(b, start, len));
+        return ret && (anyValue || len > 0);
+    }
+
+    @Override
+    public long getPosition() {
+        return offset + pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reusable view of the window part
+     */
+    private static final class CharSlice implements Slice {
+        private char [] buf;
+        private int offset;
+        private int length;
+
+        CharSlice set(char [] buf, int offset, int length) {
+            this.buf = buf;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if(index < 0 || index >= length) throw new IndexOutOfBoundsException("Index: " + index);
+            return buf[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if(start < 0 || end > length || start > end) throw new IndexOutOfBoundsException("Range: " + start + "-" + end);
+            return new String(buf, offset + start, end - start);
+        }
+
+        @Override
+        public void getChars(char [] dst, int dstBegin) {
+            System.arraycopy(buf, offset, dst, dstBegin, length);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buf, offset, length);
+        }
+    }
+}
@@ -60,4 +60,12 @@ public @interface CsvCol {
      */
     boolean nullIfEmpty() default true;
 
+    /**
+     * Max number of distinct values to cache for this column, 0 to disable.
+     * Repeated values are then shared instead of creating new instance for each row,
+     * useful for columns with few distinct values like codes or statuses.
+     * Converted values are shared only for strings, enums, numbers and booleans.
+     */
+    int cacheSize() default 0;
+
 }
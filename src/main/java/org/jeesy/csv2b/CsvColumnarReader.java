@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import org.jeesy.classinfo.ClassInfo;
+import org.jeesy.classinfo.ClassInfoScanner;
+import org.jeesy.classinfo.TypeInfo;
+import org.jeesy.classinfo.converter.api.ConversionException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read selected csv columns into {@link CsvTable} instead of beans.
+ * Numeric columns are parsed from field chars into primitive arrays, string columns are dictionary encoded,
+ * not selected columns are skipped without creating strings.
+ * @author Artem Mironov
+ */
+public class CsvColumnarReader extends CsvReader {
+    private static final TypeInfo<String> STRING_TYPE_INFO = TypeInfo.forClass(String.class);
+
+    public enum Type {
+        INT, LONG, DOUBLE, STRING
+    }
+
+    private final String [] header;
+    private final List<String> names = new ArrayList<>();
+    private final List<Type> types = new ArrayList<>();
+
+    public CsvColumnarReader(Reader reader, String [] header, CsvModel model) {
+        super(reader, model);
+        this.header = header;
+    }
+
+    /**
+     * Create reader what takes header from the first row
+     */
+    public CsvColumnarReader(Reader reader, CsvModel model) throws CsvException {
+        super(reader, model);
+        this.header = readRow();
+    }
+
+    /**
+     * Select column to read
+     * @param name column name in header
+     */
+    public void addColumn(String name, Type type) {
+        if(names.contains(name)) throw new IllegalArgumentException("Column already added " + name);
+        names.add(name);
+        types.add(type);
+    }
+
+    /**
+     * Select columns mapped to bean properties by {@link CsvIndex}.
+     * Column type is taken from property type: int, long, double and their wrappers are read as numbers,
+     * float as double, other types as strings.
+     * @param properties dot separated property paths
+     */
+    public void addColumns(Class<?> beanType, String... properties) {
+        ClassInfo<?> classInfo = ClassInfoScanner.classInfo(beanType);
+        CsvIndex index = classInfo.getIndex(CsvIndex.class);
+        for(String path : properties) {
+            String name = index.getColumnNameByPath(path);
+            if(name == null) throw new IllegalArgumentException("Property " + path + " is not mapped in " + beanType);
+            addColumn(name, typeOf(CsvBindingPlan.propertyInfo(classInfo, path).getType()));
+        }
+    }
+
+    static Type typeOf(Class<?> type) {
+        if(type == int.class || type == Integer.class || type == short.class || type == Short.class
+                || type == byte.class || type == Byte.class) return Type.INT;
+        if(type == long.class || type == Long.class) return Type.LONG;
+        if(type == double.class || type == Double.class || type == float.class || type == Float.class) return Type.DOUBLE;
+        return Type.STRING;
+    }
+
+    public String [] getHeader() {
+        return header;
+    }
+
+    /**
+     * Fill columns in row number order, shorter rows get nulls
+     */
+    private final class ColumnLoader implements CharsColumnProcessor {
+        //selected column by 1-based column number
+        private final CsvTable.Column [] byColNum;
+
+        ColumnLoader(CsvTable.Column [] byColNum) {
+            this.byColNum = byColNum;
+        }
+
+        @Override
+        public boolean onValue(int rowNum, int colNum, String value) {
+            return onChars(rowNum, colNum, value);
+        }
+
+        @Override
+        public boolean onChars(int rowNum, int colNum, CharSequence value) {
+            if(colNum >= byColNum.length) return true;
+            CsvTable.Column column = byColNum[colNum];
+            if(column == null) return true;
+            if(value.length() == 0) {
+                column.appendNull();
+                return true;
+            }
+            try {
+                column.append(value);
+            } catch (NumberFormatException e) {
+                throw new CsvException(rowNum, colNum, new ConversionException(value.toString(), STRING_TYPE_INFO,
+                        TypeInfo.forClass(column.valueType()), "Cannot parse number from"));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Read remaining rows into selected columns
+     * @throws CsvException on parse or input errors
+     * @throws IllegalStateException if some column is not found in header
+     */
+    public CsvTable read() throws CsvException {
+        CsvTable.Column [] columns = new CsvTable.Column[names.size()];
+        int [] colNums = new int[columns.length];
+        int maxColNum = 0;
+        for(int i = 0; i<columns.length; i++) {
+            String name = names.get(i);
+            int colNum = 0;
+            for(int j = 0; j<header.length; j++) {
+                if(name.equals(header[j])) {
+                    colNum = j + 1;
+                    break;
+                }
+            }
+            if(colNum == 0) throw new IllegalStateException("Column " + name + " not found in header");
+            colNums[i] = colNum;
+            maxColNum = Math.max(maxColNum, colNum);
+            columns[i] = newColumn(name, types.get(i));
+        }
+        CsvTable.Column [] byColNum = new CsvTable.Column[maxColNum + 1];
+        for(int i = 0; i<columns.length; i++) byColNum[colNums[i]] = columns[i];
+        setProjection(colNums);
+        ColumnLoader loader = new ColumnLoader(byColNum);
+        int rows = 0;
+        try {
+            for(;;) {
+                boolean ret;
+                try {
+                    ret = realReadRow(loader);
+                } catch (IOException e) {
+                    throw new CsvException(rowNum, colNum, e);
+                }
+                if(!ret) break;
+                rows++;
+                for(CsvTable.Column c : columns) {
+                    if(c.size() < rows) c.appendNull();
+                }
+            }
+        } finally {
+            //drop values of unfinished row
+            for(CsvTable.Column c : columns) {
+                if(c.size() > rows) c.truncate(rows);
+            }
+        }
+        return new CsvTable(columns, rows);
+    }
+
+    private static CsvTable.Column newColumn(String name, Type type) {
+        switch (type) {
+            case INT: return new CsvTable.IntColumn(name);
+            case LONG: return new CsvTable.LongColumn(name);
+            case DOUBLE: return new CsvTable.DoubleColumn(name);
+            default: return new CsvTable.StringColumn(name);
+        }
+    }
+}
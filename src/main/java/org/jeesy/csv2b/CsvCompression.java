@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression formats of csv streams supported by {@link CsvModel} factory methods
+ * @author Artem Mironov
+ */
+public enum CsvCompression {
+    /**
+     * gzip file format
+     */
+    GZIP {
+        @Override
+        InputStream inflate(InputStream in, int bufferSize) throws IOException {
+            return new GZIPInputStream(in, bufferSize);
+        }
+
+        @Override
+        OutputStream deflate(OutputStream out, final int level, int bufferSize) throws IOException {
+            return new GZIPOutputStream(out, bufferSize) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+    },
+    /**
+     * zlib format of {@link Deflater} with default settings
+     */
+    DEFLATE {
+        @Override
+        InputStream inflate(InputStream in, int bufferSize) {
+            final Inflater inflater = new Inflater();
+            return new InflaterInputStream(in, inflater, bufferSize) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        OutputStream deflate(OutputStream out, int level, int bufferSize) {
+            final Deflater deflater = new Deflater(level);
+            return new DeflaterOutputStream(out, deflater, bufferSize) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+    };
+
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    abstract InputStream inflate(InputStream in, int bufferSize) throws IOException;
+
+    abstract OutputStream deflate(OutputStream out, int level, int bufferSize) throws IOException;
+
+    /**
+     * Decompressing stream what inflates data by large blocks
+     */
+    InputStream decompress(InputStream in, int bufferSize) throws IOException {
+        return new BufferedInputStream(inflate(in, bufferSize), bufferSize);
+    }
+
+    /**
+     * Compressing stream
+     * @param level {@link Deflater} compression level
+     */
+    OutputStream compress(OutputStream out, int level, int bufferSize) throws IOException {
+        if(level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        return deflate(out, level, bufferSize);
+    }
+}
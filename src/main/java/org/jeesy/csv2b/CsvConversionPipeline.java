@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Parse rows on the calling thread and build beans from batches of raw rows on executor.
+ * Results are recorded by workers and replayed to the handler on the calling thread,
+ * so handler sees the same calls with the same row and column numbers as with {@link CsvBeanReader#readOne(CsvReader.RowHandler)}.
+ * Number of batches in flight is limited to keep memory bounded.
+ * @author Artem Mironov
+ */
+final class CsvConversionPipeline<T> {
+    private final CsvBeanReader<T> reader;
+    private final Executor executor;
+    private final boolean ordered;
+    private final int batchSize;
+    private final int maxInFlight;
+    private volatile boolean stopped = false;
+
+    CsvConversionPipeline(CsvBeanReader<T> reader, Executor executor, boolean ordered, int batchSize, int maxInFlight) {
+        this.reader = reader;
+        this.executor = executor;
+        this.ordered = ordered;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+    }
+
+    private static final class Failure {
+        private final CsvException exception;
+
+        Failure(CsvException exception) {
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Raw rows read by parsing thread and handler calls recorded while converting them
+     */
+    private final class Batch implements CsvReader.RowHandler<String[]>, Runnable {
+        private final String [][] rows = new String[batchSize][];
+        private final int [] rowNums = new int[batchSize];
+        private int count = 0;
+        //errors what stopped reading, delivered after the rows
+        private CsvException readFailure;
+        private RuntimeException readException;
+        private final List<Object> events = new ArrayList<>();
+        private int [] eventRowNums = new int[64];
+        private RuntimeException failure;
+        private BlockingQueue<Batch> completed;
+        private volatile boolean done = false;
+
+        @Override
+        public boolean onError(CsvException e) {
+            readFailure = e;
+            return false;
+        }
+
+        @Override
+        public boolean onValue(int rowNum, String[] value) {
+            rows[count] = value;
+            rowNums[count] = rowNum;
+            count++;
+            return true;
+        }
+
+        private void record(int rowNum, Object event) {
+            if(events.size() == eventRowNums.length) eventRowNums = Arrays.copyOf(eventRowNums, eventRowNums.length * 2);
+            eventRowNums[events.size()] = rowNum;
+            events.add(event);
+        }
+
+        @Override
+        public void run() {
+            CsvReader.RowHandler<T> recorder = new CsvReader.RowHandler<T>() {
+                @Override
+                public boolean onError(CsvException e) {
+                    record(e.getRow(), new Failure(e));
+                    return true;
+                }
+
+                @Override
+                public boolean onValue(int rowNum, T value) {
+                    record(rowNum, value);
+                    return true;
+                }
+            };
+            int i = 0;
+            try {
+                for(; i<count && !stopped; i++) {
+                    reader.toBean(rowNums[i], rows[i], recorder);
+                    rows[i] = null;
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            } catch (Throwable e) {
+                //errors of converters and setters are rethrown on reading thread too
+                failure = new CsvException(rowNums[i], 0, new ExecutionException(e));
+            } finally {
+                done = true;
+                if(completed != null) completed.add(this);
+            }
+        }
+
+        boolean stopsReading() {
+            return readFailure != null || readException != null;
+        }
+
+        /**
+         * Replay recorded calls
+         * @return false if handler asked to stop
+         */
+        @SuppressWarnings("unchecked")
+        boolean deliver(CsvReader.RowHandler<T> rowHandler) {
+            for(int i = 0; i<events.size(); i++) {
+                Object event = events.get(i);
+                if(event instanceof Failure) {
+                    if(!rowHandler.onError(((Failure) event).exception)) return false;
+                } else if(!rowHandler.onValue(eventRowNums[i], (T) event)) {
+                    return false;
+                }
+            }
+            //beans converted before failure are delivered as sequential reader does
+            if(failure != null) throw failure;
+            if(readException != null) throw readException;
+            if(readFailure != null) {
+                rowHandler.onError(readFailure);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Read batch of raw rows
+     * @return batch or null if there are no more rows
+     */
+    private Batch readBatch() {
+        Batch batch = new Batch();
+        try {
+            while(batch.count < batchSize && reader.readBeanRow(batch));
+        } catch (RuntimeException e) {
+            batch.readException = e;
+        }
+        if(batch.count == 0 && batch.readFailure == null && batch.readException == null) return null;
+        return batch;
+    }
+
+    private void submit(Batch batch, BlockingQueue<Batch> completed) {
+        batch.completed = completed;
+        try {
+            executor.execute(batch);
+        } catch (RejectedExecutionException e) {
+            //convert on the calling thread
+            batch.run();
+        }
+    }
+
+    CsvReader.RowHandler<T> readBeans(CsvReader.RowHandler<T> rowHandler) throws CsvException {
+        BlockingQueue<Batch> completed = new LinkedBlockingQueue<>();
+        Deque<Batch> inFlight = new ArrayDeque<>();
+        Batch last = null;
+        boolean eof = false;
+        try {
+            for(;;) {
+                while(!eof && inFlight.size() < maxInFlight) {
+                    Batch batch = readBatch();
+                    if(batch == null || batch.count < batchSize) eof = true;
+                    if(batch == null) break;
+                    inFlight.add(batch);
+                    submit(batch, completed);
+                }
+                if(inFlight.isEmpty()) {
+                    if(last != null) last.deliver(rowHandler);
+                    break;
+                }
+                Batch next;
+                if(ordered) {
+                    next = inFlight.peek();
+                    while(!next.done) completed.take();
+                    inFlight.poll();
+                } else {
+                    next = completed.take();
+                    inFlight.remove(next);
+                    //batch what stopped reading ends delivery, so it waits for all others
+                    if(next.stopsReading() && !inFlight.isEmpty()) {
+                        last = next;
+                        continue;
+                    }
+                }
+                if(!next.deliver(rowHandler)) break;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CsvException(e);
+        } finally {
+            stopped = true;
+        }
+        return rowHandler;
+    }
+}
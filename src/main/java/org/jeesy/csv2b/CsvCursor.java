@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Cursor over csv rows what reuses single row buffer.
+ * Fields are available as char sequences valid till the next call of {@link #next()},
+ * numbers are parsed directly from the buffer, so reading doesn't allocate anything per row.
+ * Field indexes are zero based, column numbers in {@link CsvException} are one based as everywhere.
+ * @author Artem Mironov
+ */
+public class CsvCursor implements Closeable {
+    private final CsvTokenizer tokenizer;
+    private final boolean [] projected;
+    private final boolean projectRest;
+    private char [] buf = new char[1024];
+    private int length = 0;
+    private int [] starts = new int[16];
+    private int [] ends = new int[16];
+    private Field [] fields = new Field[16];
+    private int count = 0;
+
+    private final CsvTokenizer.FieldHandler collector = new CsvTokenizer.FieldHandler() {
+        @Override
+        public boolean onField(int rowNum, int colNum, CharSequence value) {
+            //skipped fields are kept as empty without touching their content
+            int len = CsvReader.isProjected(projected, projectRest, colNum) ? value.length() : 0;
+            if(length + len > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, length + len));
+            if(count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            if(value instanceof CsvTokenizer.Slice) {
+                if(len > 0) ((CsvTokenizer.Slice) value).getChars(buf, length);
+            } else {
+                for(int i = 0; i<len; i++) buf[length + i] = value.charAt(i);
+            }
+            starts[count] = length;
+            length += len;
+            ends[count] = length;
+            count++;
+            return true;
+        }
+    };
+
+    CsvCursor(CsvTokenizer tokenizer, boolean [] projected, boolean projectRest) {
+        this.tokenizer = tokenizer;
+        this.projected = projected;
+        this.projectRest = projectRest;
+    }
+
+    /**
+     * Move to the next row
+     * @return false if there are no more rows
+     * @throws CsvException on input errors
+     */
+    public boolean next() throws CsvException {
+        count = 0;
+        length = 0;
+        boolean ret;
+        try {
+            ret = tokenizer.readRow(collector);
+        } catch (IOException e) {
+            count = 0;
+            throw new CsvException(tokenizer.getRowNum(), tokenizer.getColNum(), e);
+        }
+        if(!ret) count = 0;
+        return ret;
+    }
+
+    public int getRowNum() {
+        return tokenizer.getRowNum();
+    }
+
+    public int fieldCount() {
+        return count;
+    }
+
+    private void check(int index) {
+        if(index < 0 || index >= count) throw new IndexOutOfBoundsException("Field " + index + " of " + count);
+    }
+
+    /**
+     * @return field content, valid till the next row
+     */
+    public CharSequence charSequence(int index) {
+        check(index);
+        if(index >= fields.length) fields = Arrays.copyOf(fields, Math.max(fields.length * 2, index + 1));
+        Field field = fields[index];
+        if(field == null) field = fields[index] = new Field(index);
+        return field;
+    }
+
+    public String getString(int index) {
+        check(index);
+        return new String(buf, starts[index], ends[index] - starts[index]);
+    }
+
+    public boolean isEmpty(int index) {
+        check(index);
+        return starts[index] == ends[index];
+    }
+
+    public int getInt(int index) throws CsvException {
+        CharSequence cs = charSequence(index);
+        try {
+            return CsvNumbers.parseInt(cs, 0, cs.length());
+        } catch (NumberFormatException e) {
+            throw new CsvException(getRowNum(), index + 1, e);
+        }
+    }
+
+    public long getLong(int index) throws CsvException {
+        CharSequence cs = charSequence(index);
+        try {
+            return CsvNumbers.parseLong(cs, 0, cs.length());
+        } catch (NumberFormatException e) {
+            throw new CsvException(getRowNum(), index + 1, e);
+        }
+    }
+
+    public double getDouble(int index) throws CsvException {
+        CharSequence cs = charSequence(index);
+        try {
+            return CsvNumbers.parseDouble(cs, 0, cs.length());
+        } catch (NumberFormatException e) {
+            throw new CsvException(getRowNum(), index + 1, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        tokenizer.close();
+    }
+
+    /**
+     * View of the field in the row buffer
+     */
+    private final class Field implements CharSequence {
+        private final int index;
+
+        Field(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int length() {
+            return ends[index] - starts[index];
+        }
+
+        @Override
+        public char charAt(int i) {
+            if(i < 0 || i >= length()) throw new IndexOutOfBoundsException("Index: " + i);
+            return buf[starts[index] + i];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if(start < 0 || end > length() || start > end) throw new IndexOutOfBoundsException("Range: " + start + "-" + end);
+            return new String(buf, starts[index] + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(buf, starts[index], length());
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Split of single file to byte ranges starting on real row boundaries, so each range can be parsed by own
+ * {@link CsvByteTokenizer} on separate core.
+ * Range starts are guessed after line feeds in parallel and checked against the end of the previous range,
+ * so quoted line breaks are handled correctly. Row numbers of each range are the same sequential reader reports.
+ * @author Artem Mironov
+ */
+final class CsvFileSplitter {
+    static final int MIN_WINDOW_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final Charset charset;
+    private final CsvModel model;
+    private final long fileSize;
+    private final String [] header;
+    //tokenizer state on the first data row
+    private final long dataStart;
+    private final int firstRowNum;
+    private final boolean firstWasCR;
+
+    /**
+     * @param readHeader read the first row as header
+     */
+    CsvFileSplitter(FileChannel channel, Charset charset, CsvModel model, boolean readHeader) throws IOException {
+        this.channel = channel;
+        this.charset = charset;
+        this.model = model;
+        this.fileSize = channel.size();
+        if(readHeader) {
+            CsvByteTokenizer tokenizer = new CsvByteTokenizer(channel, 0, charset, model, MIN_WINDOW_SIZE);
+            header = new CsvReader(tokenizer, model).readRow();
+            tokenizer.skipPendingLineFeed();
+            dataStart = tokenizer.getPosition();
+            firstRowNum = tokenizer.getRowNum();
+            firstWasCR = tokenizer.isWasCR();
+        } else {
+            header = null;
+            dataStart = 0;
+            firstRowNum = 0;
+            firstWasCR = false;
+        }
+    }
+
+    /**
+     * Row range with the tokenizer state on its start
+     */
+    static final class Chunk {
+        long start;
+        boolean wasCR;
+        long end;
+        boolean endWasCR;
+        //number of rows tokenizer counted in the range
+        int rows;
+        int rowOffset;
+    }
+
+    /**
+     * @return header read from file or null if it was not requested
+     */
+    String [] getHeader() {
+        return header;
+    }
+
+    private static int windowSize(long rangeSize) {
+        return (int) Math.min(CsvByteTokenizer.DEFAULT_WINDOW_SIZE, Math.max(MIN_WINDOW_SIZE, rangeSize + MIN_WINDOW_SIZE));
+    }
+
+    /**
+     * Find first position after line feed in [from, limit)
+     * @return found position or limit
+     */
+    private long lineStart(long from, long limit) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(MIN_WINDOW_SIZE);
+        long p = from - 1;
+        while(p < limit - 1) {
+            buf.clear();
+            int n = channel.read(buf, p);
+            if(n <= 0) break;
+            for(int i = 0; i<n && p + i < limit - 1; i++) {
+                if(buf.get(i) == '\n') return p + i + 1;
+            }
+            p += n;
+        }
+        return limit;
+    }
+
+    /**
+     * Count rows starting before stop position
+     */
+    private Chunk scan(long start, boolean wasCR, long stop) throws IOException {
+        Chunk chunk = new Chunk();
+        chunk.start = start;
+        chunk.wasCR = wasCR;
+        CsvByteTokenizer tokenizer = new CsvByteTokenizer(channel, start, charset, model, windowSize(stop - start));
+        tokenizer.resume(0, wasCR);
+        try {
+            tokenizer.skipPendingLineFeed();
+            while(tokenizer.getPosition() < stop && tokenizer.getPosition() < fileSize) {
+                tokenizer.readRow(CsvTokenizer.SKIP_FIELDS);
+                tokenizer.skipPendingLineFeed();
+            }
+            chunk.end = tokenizer.getPosition();
+            chunk.endWasCR = tokenizer.isWasCR();
+        } catch (RuntimeException e) {
+            //unfinished quote takes the rest of file, second pass reports it
+            chunk.end = fileSize;
+            chunk.endWasCR = false;
+        }
+        chunk.rows = tokenizer.getRowNum();
+        return chunk;
+    }
+
+    /**
+     * Split data to ranges of about chunkSize bytes starting on row boundaries
+     */
+    List<Chunk> split(ForkJoinPool pool, long chunkSize) throws IOException, InterruptedException {
+        long dataSize = fileSize - dataStart;
+        int count = (int) Math.max(1, (dataSize + chunkSize - 1) / chunkSize);
+        final long [] nominal = new long[count + 1];
+        for(int i = 0; i<count; i++) nominal[i] = dataStart + i * chunkSize;
+        nominal[count] = fileSize;
+
+        List<Callable<Chunk>> tasks = new ArrayList<>(count);
+        for(int i = 0; i<count; i++) {
+            final int idx = i;
+            tasks.add(new Callable<Chunk>() {
+                @Override
+                public Chunk call() throws Exception {
+                    if(idx == 0) return scan(dataStart, firstWasCR, nominal[1]);
+                    return scan(lineStart(nominal[idx], nominal[idx + 1]), false, nominal[idx + 1]);
+                }
+            });
+        }
+        List<Future<Chunk>> guesses = pool.invokeAll(tasks);
+
+        List<Chunk> chunks = new ArrayList<>(count);
+        long pos = dataStart;
+        boolean wasCR = firstWasCR;
+        int rowOffset = firstRowNum;
+        for(int i = 0; i<count; i++) {
+            Chunk chunk = get(guesses.get(i));
+            if(chunk.start != pos || chunk.wasCR != wasCR) chunk = scan(pos, wasCR, nominal[i + 1]);
+            chunk.rowOffset = rowOffset;
+            rowOffset += chunk.rows;
+            pos = chunk.end;
+            wasCR = chunk.endWasCR;
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Create tokenizer what continues from the range start with the row number and state sequential reader has there.
+     * Caller stops reading when tokenizer position reaches the range end.
+     */
+    CsvByteTokenizer tokenizer(Chunk chunk) throws IOException {
+        CsvByteTokenizer tokenizer = new CsvByteTokenizer(channel, chunk.start, charset, model, windowSize(chunk.end - chunk.start));
+        tokenizer.resume(chunk.rowOffset, chunk.wasCR);
+        return tokenizer;
+    }
+
+    static <R> R get(Future<R> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if(cause instanceof Error) throw (Error) cause;
+            throw new CsvException((Exception) cause);
+        }
+    }
+}
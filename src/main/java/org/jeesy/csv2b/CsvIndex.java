@@ -106,6 +106,14 @@ public class CsvIndex implements CommonClassIndex {
         return headerToFieldMap.get(name);
     }
 
+    /**
+     * @param path dot separated property path
+     * @return column name or null if property is not mapped
+     */
+    public String getColumnNameByPath(String path) {
+        return fieldToHeaderMap.get(path);
+    }
+
     public String getHeaderByPos(int pos) {
         return header[pos - 1];
     }
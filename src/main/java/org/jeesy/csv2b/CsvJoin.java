@@ -0,0 +1,482 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import org.jeesy.classinfo.ClassInfo;
+import org.jeesy.classinfo.ClassInfoScanner;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hash join of two csv inputs with headers by key columns.
+ * Build input, what should be the smaller one, is loaded to hash table, probe input is streamed by {@link CsvReader}
+ * and each probe row is joined with build rows of the same key in build order.
+ * Joined row has probe columns followed by build columns except the keys, keys are compared as strings.
+ * Build column named the same as column already in joined header is renamed to {@code build.<name>},
+ * if that name is taken too the join fails with {@link IllegalArgumentException}.
+ * In left join probe rows without match are passed with empty build columns.
+ * <p>
+ * When build rows exceed memory budget, the join falls back to grace hash join: both inputs are split by key hash
+ * to partition files and each partition is joined separately, so joined rows come grouped by partition
+ * instead of probe order. Single partition of build rows is expected to fit in memory.
+ * @author Artem Mironov
+ */
+public class CsvJoin {
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+    public static final int DEFAULT_PARTITIONS = 32;
+
+    public enum Type {
+        INNER, LEFT
+    }
+
+    private final CsvModel model;
+    private Type type = Type.INNER;
+    private String [] buildKeys;
+    private String [] probeKeys;
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private int partitions = DEFAULT_PARTITIONS;
+    private Path tempDirectory;
+
+    public CsvJoin(CsvModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Join type, inner by default
+     */
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * @param columns key column names in build input header
+     */
+    public void setBuildKeys(String... columns) {
+        this.buildKeys = columns;
+    }
+
+    /**
+     * Use columns mapped to bean properties by {@link CsvIndex} as build keys
+     * @param properties dot separated property paths
+     */
+    public void setBuildKeys(Class<?> beanType, String... properties) {
+        this.buildKeys = columnNames(beanType, properties);
+    }
+
+    /**
+     * @param columns key column names in probe input header, in the same order as build keys
+     */
+    public void setProbeKeys(String... columns) {
+        this.probeKeys = columns;
+    }
+
+    public void setProbeKeys(Class<?> beanType, String... properties) {
+        this.probeKeys = columnNames(beanType, properties);
+    }
+
+    private static String [] columnNames(Class<?> beanType, String [] properties) {
+        ClassInfo<?> classInfo = ClassInfoScanner.classInfo(beanType);
+        CsvIndex index = classInfo.getIndex(CsvIndex.class);
+        String [] names = new String[properties.length];
+        for(int i = 0; i<properties.length; i++) {
+            names[i] = index.getColumnNameByPath(properties[i]);
+            if(names[i] == null) throw new IllegalArgumentException("Property " + properties[i] + " is not mapped in " + beanType);
+        }
+        return names;
+    }
+
+    /**
+     * Approximate heap size build rows may take before join spills to disk
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if(memoryBudget <= 0) throw new IllegalArgumentException("Memory budget should be positive");
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Number of partitions for grace hash join
+     */
+    public void setPartitions(int partitions) {
+        if(partitions <= 1) throw new IllegalArgumentException("At least two partitions are needed");
+        this.partitions = partitions;
+    }
+
+    /**
+     * Directory for partition files, default temp directory if not set
+     */
+    public void setTempDirectory(Path tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Receiver of joined rows
+     */
+    private static abstract class Output {
+        abstract void header(String [] header);
+
+        /**
+         * @param rowNum row number of the probe row
+         * @return false to stop joining
+         */
+        abstract boolean row(int rowNum, String [] joined);
+    }
+
+    /**
+     * Join UTF-8 files and write header and joined rows to out
+     * @return number of joined rows
+     */
+    public long join(Path build, Path probe, Path out) throws CsvException {
+        CsvReader buildReader = model.newReader(build);
+        CsvReader probeReader;
+        try {
+            probeReader = model.newReader(probe);
+        } catch (CsvException e) {
+            CsvModel.closeQuietly(buildReader);
+            throw e;
+        }
+        try(CsvWriter writer = new CsvWriter(Files.newBufferedWriter(out, StandardCharsets.UTF_8), model)) {
+            return join(buildReader, probeReader, writer);
+        } catch (IOException e) {
+            CsvModel.closeQuietly(buildReader);
+            CsvModel.closeQuietly(probeReader);
+            throw new CsvException(e);
+        }
+    }
+
+    /**
+     * Write header and joined rows to writer
+     * @return number of joined rows
+     */
+    public long join(Reader build, Reader probe, CsvWriter writer) throws CsvException {
+        return join(model.newReader(build), model.newReader(probe), writer);
+    }
+
+    private long join(CsvReader build, CsvReader probe, final CsvWriter writer) throws CsvException {
+        final long [] count = new long[1];
+        join(build, probe, new Output() {
+            @Override
+            void header(String [] header) {
+                writer.write(header);
+            }
+
+            @Override
+            boolean row(int rowNum, String [] joined) {
+                writer.write(joined);
+                count[0]++;
+                return true;
+            }
+        });
+        return count[0];
+    }
+
+    /**
+     * Build beans from joined rows, bean columns are mapped by joined header.
+     * Values and conversion errors are passed to rowHandler the same way {@link CsvBeanReader} does with probe row numbers.
+     * @return rowHandler parameter
+     */
+    public <T> CsvReader.RowHandler<T> join(Reader build, Reader probe, final Class<T> beanType, final CsvReader.RowHandler<T> rowHandler) throws CsvException {
+        join(model.newReader(build), model.newReader(probe), new Output() {
+            private CsvBeanReader<T> beans;
+
+            @Override
+            void header(String [] header) {
+                //reader is used only to convert rows
+                beans = new CsvBeanReader<>(beanType, new StringReader(""), header, model);
+            }
+
+            @Override
+            boolean row(int rowNum, String [] joined) {
+                return beans.toBean(rowNum, joined, rowHandler);
+            }
+        });
+        return rowHandler;
+    }
+
+    private static int [] columns(String [] header, String [] names, String side) {
+        if(names == null || names.length == 0) throw new IllegalStateException("No " + side + " keys");
+        if(header.length == 0) throw new IllegalArgumentException("No header in " + side + " input");
+        int [] cols = new int[names.length];
+        for(int i = 0; i<names.length; i++) {
+            cols[i] = Arrays.asList(header).indexOf(names[i]);
+            if(cols[i] < 0) throw new IllegalArgumentException("Key column is not in " + side + " header: " + names[i]);
+        }
+        return cols;
+    }
+
+    private static String field(String [] row, int col) {
+        return col < row.length && row[col] != null ? row[col] : "";
+    }
+
+    private static int hash(String [] row, int [] keyCols) {
+        int h = 1;
+        for(int col : keyCols) h = 31 * h + CsvValueCache.hash(field(row, col));
+        return h ^ (h >>> 16);
+    }
+
+    private static long sizeOf(String [] fields) {
+        long size = 80 + 8L * fields.length;
+        for(String f : fields) size += f == null ? 0 : 48 + 2L * f.length();
+        return size;
+    }
+
+    /**
+     * Build rows by key, rows of the same key are chained in build order
+     */
+    private static final class HashTable {
+        private final int [] keyCols;
+        private int [] table = new int[64];
+        private int [] hashes = new int[32];
+        private int [] next = new int[32];
+        //last entry of the chain for chain heads, -1 for other entries
+        private int [] tails = new int[32];
+        private String [][] rows = new String[32][];
+        private int size = 0;
+        private int heads = 0;
+        long bytes = 0;
+
+        HashTable(int [] keyCols) {
+            this.keyCols = keyCols;
+        }
+
+        private static boolean keyEquals(String [] a, int [] aCols, String [] b, int [] bCols) {
+            for(int i = 0; i<aCols.length; i++) {
+                if(!field(a, aCols[i]).equals(field(b, bCols[i]))) return false;
+            }
+            return true;
+        }
+
+        void add(String [] row) {
+            int h = hash(row, keyCols);
+            if(size == rows.length) {
+                int capacity = size * 2;
+                hashes = Arrays.copyOf(hashes, capacity);
+                next = Arrays.copyOf(next, capacity);
+                tails = Arrays.copyOf(tails, capacity);
+                rows = Arrays.copyOf(rows, capacity);
+            }
+            int e = size++;
+            hashes[e] = h;
+            rows[e] = row;
+            next[e] = -1;
+            bytes += sizeOf(row);
+            int mask = table.length - 1;
+            int i = h & mask;
+            for(int slot; (slot = table[i]) != 0; i = (i + 1) & mask) {
+                int head = slot - 1;
+                if(hashes[head] == h && keyEquals(rows[head], keyCols, row, keyCols)) {
+                    next[tails[head]] = e;
+                    tails[head] = e;
+                    tails[e] = -1;
+                    return;
+                }
+            }
+            table[i] = e + 1;
+            tails[e] = e;
+            if(++heads * 2 > table.length) rehash();
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for(int e = 0; e<size; e++) {
+                if(tails[e] < 0) continue;
+                int i = hashes[e] & mask;
+                while(table[i] != 0) i = (i + 1) & mask;
+                table[i] = e + 1;
+            }
+        }
+
+        /**
+         * @return first build row entry with the key of probe row or -1
+         */
+        int find(String [] probe, int [] probeCols) {
+            int h = hash(probe, probeCols);
+            int mask = table.length - 1;
+            for(int i = h & mask, slot; (slot = table[i]) != 0; i = (i + 1) & mask) {
+                int head = slot - 1;
+                if(hashes[head] == h && keyEquals(rows[head], keyCols, probe, probeCols)) return head;
+            }
+            return -1;
+        }
+
+        void clear() {
+            Arrays.fill(table, 0);
+            Arrays.fill(rows, 0, size, null);
+            size = 0;
+            heads = 0;
+            bytes = 0;
+        }
+    }
+
+    /**
+     * State of single join
+     */
+    private final class Join {
+        final int [] buildCols;
+        final int [] probeCols;
+        //build columns what go to output
+        final int [] payload;
+        final int probeWidth;
+        final Output output;
+        HashTable table;
+
+        Join(String [] buildHeader, String [] probeHeader, Output output) {
+            this.buildCols = columns(buildHeader, buildKeys, "build");
+            this.probeCols = columns(probeHeader, probeKeys, "probe");
+            if(buildCols.length != probeCols.length) throw new IllegalStateException("Build and probe keys differ in size");
+            int [] cols = new int[buildHeader.length];
+            int n = 0;
+            outer:
+            for(int c = 0; c<buildHeader.length; c++) {
+                for(int k : buildCols) if(k == c) continue outer;
+                cols[n++] = c;
+            }
+            this.payload = Arrays.copyOf(cols, n);
+            this.probeWidth = probeHeader.length;
+            this.output = output;
+            this.table = new HashTable(buildCols);
+            String [] header = Arrays.copyOf(probeHeader, probeWidth + n);
+            Set<String> names = new HashSet<>(Arrays.asList(probeHeader));
+            for(int i = 0; i<n; i++) {
+                String name = buildHeader[payload[i]];
+                if(names.contains(name)) name = "build." + name;
+                if(!names.add(name)) throw new IllegalArgumentException("Build column clashes with joined header: " + buildHeader[payload[i]]);
+                header[probeWidth + i] = name;
+            }
+            output.header(header);
+        }
+
+        /**
+         * Pass joined rows of the probe row to output
+         * @return false if output asked to stop
+         */
+        boolean probe(int rowNum, String [] row) {
+            int e = table.find(row, probeCols);
+            if(e < 0 && type == Type.INNER) return true;
+            String [] joined = new String[probeWidth + payload.length];
+            for(int i = 0; i<probeWidth; i++) joined[i] = field(row, i);
+            if(e < 0) {
+                Arrays.fill(joined, probeWidth, joined.length, "");
+                return output.row(rowNum, joined);
+            }
+            for(; e >= 0; e = table.next[e]) {
+                String [] build = table.rows[e];
+                for(int i = 0; i<payload.length; i++) joined[probeWidth + i] = field(build, payload[i]);
+                if(!output.row(rowNum, table.next[e] >= 0 ? joined.clone() : joined)) return false;
+            }
+            return true;
+        }
+    }
+
+    private void join(CsvReader build, CsvReader probe, Output output) throws CsvException {
+        List<Path> files = new ArrayList<>();
+        try {
+            Join join = new Join(build.readRow(), probe.readRow(), output);
+            CsvSpill.LastRow last = new CsvSpill.LastRow();
+            boolean spilled = false;
+            while(build.readRow(last)) {
+                join.table.add(last.fields);
+                if(join.table.bytes > memoryBudget) {
+                    spilled = true;
+                    break;
+                }
+            }
+            if(spilled) {
+                grace(join, build, probe, files);
+            } else {
+                while(probe.readRow(last)) {
+                    if(!join.probe(last.rowNum, last.fields)) break;
+                }
+            }
+        } catch (IOException e) {
+            throw new CsvException(e);
+        } finally {
+            CsvModel.closeQuietly(build);
+            CsvModel.closeQuietly(probe);
+            for(Path file : files) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private int partition(int hash) {
+        return ((hash * 0x9E3779B9) >>> 1) % partitions;
+    }
+
+    private Path newFile(List<Path> files) throws IOException {
+        Path file = CsvSpill.newFile(tempDirectory, "csv2b-join");
+        files.add(file);
+        return file;
+    }
+
+    /**
+     * Write rows of the reader and already loaded rows to partition files by key hash
+     */
+    private void split(CsvReader reader, int [] keyCols, Path [] parts, List<Path> files, HashTable loaded) throws IOException {
+        CsvWriter [] writers = new CsvWriter[partitions];
+        try {
+            for(int p = 0; p<partitions; p++) {
+                parts[p] = newFile(files);
+                writers[p] = CsvSpill.newWriter(parts[p]);
+            }
+            if(loaded != null) {
+                //row numbers of loaded build rows are not needed
+                for(int e = 0; e<loaded.size; e++) CsvSpill.writeRow(writers[partition(loaded.hashes[e])], 0, loaded.rows[e]);
+                loaded.clear();
+            }
+            CsvSpill.LastRow last = new CsvSpill.LastRow();
+            while(reader.readRow(last)) CsvSpill.writeRow(writers[partition(hash(last.fields, keyCols))], last.rowNum, last.fields);
+        } finally {
+            for(CsvWriter writer : writers) {
+                if(writer != null) writer.close();
+            }
+        }
+    }
+
+    private void grace(Join join, CsvReader build, CsvReader probe, List<Path> files) throws IOException {
+        Path [] buildParts = new Path[partitions];
+        Path [] probeParts = new Path[partitions];
+        split(build, join.buildCols, buildParts, files, join.table);
+        split(probe, join.probeCols, probeParts, files, null);
+        CsvSpill.LastRow last = new CsvSpill.LastRow();
+        for(int p = 0; p<partitions; p++) {
+            join.table = new HashTable(join.buildCols);
+            try(CsvReader reader = CsvSpill.newReader(buildParts[p])) {
+                while(CsvSpill.readRow(reader, last)) join.table.add(last.fields);
+            }
+            Files.delete(buildParts[p]);
+            try(CsvReader reader = CsvSpill.newReader(probeParts[p])) {
+                while(CsvSpill.readRow(reader, last)) {
+                    if(!join.probe(last.rowNum, last.fields)) return;
+                }
+            }
+            Files.delete(probeParts[p]);
+        }
+    }
+}
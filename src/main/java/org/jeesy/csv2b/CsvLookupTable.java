@@ -0,0 +1,267 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lookup table over csv file keyed by one or more columns.
+ * Only the index of row offsets is kept in memory, it is an open addressing hash table in direct buffer
+ * with 16 bytes per slot. Beans are built by {@link CsvBeanReader} from the memory mapped file on lookup,
+ * recently used beans are kept in LRU cache, so they are shared between lookups and shouldn't be modified.
+ * <p>
+ * If several rows have the same key the first one is returned. Missing key fields are taken as empty.
+ * Lookups are synchronized, table can be used from several threads.
+ * Lookups jump over the file, so rows they read are not reported to metrics of the model.
+ * @author Artem Mironov
+ */
+public class CsvLookupTable<T> implements Closeable {
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+    //window is remapped only when lookup goes out of it
+    private static final int WINDOW_SIZE = 1024 * 1024;
+    private static final int SLOT_SIZE = 16;
+    private static final int MAX_CAPACITY = 1 << 26;
+
+    private final CsvByteTokenizer tokenizer;
+    private final CsvBeanReader<T> reader;
+    private final int [] keyColumns;
+    //slots of (position << 1 | wasCR) + 1, row number before the row, key hash; zero position means empty slot
+    private ByteBuffer slots;
+    private int capacity;
+    private int size;
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+    private final LinkedHashMap<List<String>, T> cache = new LinkedHashMap<List<String>, T>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, T> eldest) {
+            return size() > cacheSize;
+        }
+    };
+    private final BeanHolder<T> holder = new BeanHolder<>();
+
+    public CsvLookupTable(Class<T> beanType, Path path, Charset charset, boolean useHeaderFromFile, CsvModel model, String... keyColumns) throws CsvException {
+        if(keyColumns.length == 0) throw new IllegalArgumentException("At least one key column should be specified");
+        FileChannel channel = null;
+        CsvByteTokenizer tok = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            tok = new CsvByteTokenizer(channel, 0, charset, model, WINDOW_SIZE);
+            CsvBeanReader<T> beanReader = new CsvBeanReader<>(beanType, tok, useHeaderFromFile, model.withMetrics(null));
+            this.tokenizer = tok;
+            this.reader = beanReader;
+            this.keyColumns = columnNums(beanReader.getHeader(), keyColumns);
+            build(channel.size());
+        } catch (IOException|RuntimeException e) {
+            if(channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if(e instanceof CsvException) throw (CsvException) e;
+            throw new CsvException(tok != null ? tok.getRowNum() : 0, 0, e);
+        }
+    }
+
+    private static int [] columnNums(String [] header, String [] names) {
+        int [] nums = new int[names.length];
+        for(int i = 0; i<names.length; i++) {
+            int idx = Arrays.asList(header).indexOf(names[i]);
+            if(idx < 0) throw new IllegalArgumentException("Key column is not in header: " + names[i]);
+            nums[i] = idx + 1;
+        }
+        return nums;
+    }
+
+    /**
+     * Collects hashes of key fields
+     */
+    private final class KeyHasher implements CsvTokenizer.FieldHandler {
+        final int [] hashes = new int[keyColumns.length];
+
+        @Override
+        public boolean onField(int rowNum, int colNum, CharSequence value) {
+            for(int i = 0; i<keyColumns.length; i++) {
+                if(keyColumns[i] == colNum) hashes[i] = CsvValueCache.hash(value);
+            }
+            return true;
+        }
+    }
+
+    private static int combine(int [] hashes) {
+        int h = 1;
+        for(int hash : hashes) h = 31 * h + hash;
+        return h ^ (h >>> 16);
+    }
+
+    private void build(long fileSize) throws IOException {
+        allocate(1024);
+        KeyHasher hasher = new KeyHasher();
+        for(;;) {
+            tokenizer.skipPendingLineFeed();
+            long position = tokenizer.getPosition();
+            if(position >= fileSize) break;
+            int rowNum = tokenizer.getRowNum();
+            boolean wasCR = tokenizer.isWasCR();
+            Arrays.fill(hasher.hashes, 0);
+            if(!tokenizer.readRow(hasher)) continue;
+            if(size * 4L >= capacity * 3L) grow();
+            insert((position << 1 | (wasCR ? 1 : 0)) + 1, rowNum, combine(hasher.hashes));
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        this.slots = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+    }
+
+    private void grow() {
+        if(capacity == MAX_CAPACITY) throw new IllegalStateException("Too many rows for lookup table");
+        ByteBuffer old = slots;
+        int oldCapacity = capacity;
+        allocate(capacity * 2);
+        size = 0;
+        //scan starts after an empty slot, so probe chains wrapped past the table end are not split
+        //and rows with the same key keep their file order
+        int start = 0;
+        while(old.getLong(start * SLOT_SIZE) != 0) start++;
+        for(int n = 0; n<oldCapacity; n++) {
+            int i = (start + n) & (oldCapacity - 1);
+            long entry = old.getLong(i * SLOT_SIZE);
+            if(entry != 0) insert(entry, old.getInt(i * SLOT_SIZE + 8), old.getInt(i * SLOT_SIZE + 12));
+        }
+    }
+
+    private void insert(long entry, int rowNum, int hash) {
+        int mask = capacity - 1;
+        int slot = hash & mask;
+        while(slots.getLong(slot * SLOT_SIZE) != 0) slot = (slot + 1) & mask;
+        slots.putLong(slot * SLOT_SIZE, entry);
+        slots.putInt(slot * SLOT_SIZE + 8, rowNum);
+        slots.putInt(slot * SLOT_SIZE + 12, hash);
+        size++;
+    }
+
+    /**
+     * Find bean by key column values
+     * @param key values of key columns in the order they were specified
+     * @return bean of the first row with the key or null if there is no such row
+     * @throws CsvException if row can't be read or converted
+     */
+    public synchronized T get(String... key) throws CsvException {
+        if(key.length != keyColumns.length) throw new IllegalArgumentException("Expected " + keyColumns.length + " key values");
+        if(slots == null) throw new IllegalStateException("Lookup table is closed");
+        List<String> cacheKey = Arrays.asList(key.clone());
+        T cached = cache.get(cacheKey);
+        if(cached != null) return cached;
+        int [] hashes = new int[key.length];
+        for(int i = 0; i<key.length; i++) hashes[i] = key[i] == null ? 0 : CsvValueCache.hash(key[i]);
+        int hash = combine(hashes);
+        int mask = capacity - 1;
+        for(int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long entry = slots.getLong(slot * SLOT_SIZE);
+            if(entry == 0) return null;
+            if(slots.getInt(slot * SLOT_SIZE + 12) != hash) continue;
+            T bean = materialize(entry - 1, slots.getInt(slot * SLOT_SIZE + 8), key);
+            if(bean != null) {
+                cache.put(cacheKey, bean);
+                return bean;
+            }
+        }
+    }
+
+    /**
+     * Read row at the position and build bean if the row has the key
+     */
+    private T materialize(long entry, int rowNum, String [] key) throws CsvException {
+        try {
+            tokenizer.moveTo(entry >>> 1, rowNum, (entry & 1) != 0);
+        } catch (IOException e) {
+            throw new CsvException(rowNum + 1, 0, e);
+        }
+        String [] row = reader.readRow();
+        for(int i = 0; i<key.length; i++) {
+            String value = keyColumns[i] <= row.length ? row[keyColumns[i] - 1] : "";
+            if(!value.equals(key[i] == null ? "" : key[i])) return null;
+        }
+        holder.value = null;
+        holder.exception = null;
+        reader.toBean(tokenizer.getRowNum(), row, holder);
+        if(holder.exception != null) throw holder.exception;
+        T bean = holder.value;
+        holder.value = null;
+        return bean;
+    }
+
+    private static final class BeanHolder<T> implements CsvReader.RowHandler<T> {
+        T value;
+        CsvException exception;
+
+        @Override
+        public boolean onError(CsvException e) {
+            exception = e;
+            return false;
+        }
+
+        @Override
+        public boolean onValue(int rowNum, T value) {
+            this.value = value;
+            return true;
+        }
+    }
+
+    /**
+     * @return number of indexed rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Maximal number of beans kept in LRU cache, 0 disables cache
+     */
+    public synchronized void setCacheSize(int cacheSize) {
+        if(cacheSize < 0) throw new IllegalArgumentException("Cache size should not be negative");
+        this.cacheSize = cacheSize;
+        if(cacheSize == 0) {
+            cache.clear();
+        } else {
+            while(cache.size() > cacheSize) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+        }
+    }
+
+    public String [] getHeader() {
+        return reader.getHeader();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        slots = null;
+        cache.clear();
+        reader.close();
+    }
+}
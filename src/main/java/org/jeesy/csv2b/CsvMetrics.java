@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics listener what accumulates everything in thread safe counters.
+ * Rates are obtained by reading counters periodically, for example from JMX bean.
+ * @author Artem Mironov
+ */
+public class CsvMetrics implements CsvMetricsListener {
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder inputRead = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder charsWritten = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> columnErrors = new ConcurrentHashMap<>();
+    private final Map<Phase, LongAdder> sampledNanos = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> samples = new EnumMap<>(Phase.class);
+
+    public CsvMetrics() {
+        for(Phase phase : Phase.values()) {
+            sampledNanos.put(phase, new LongAdder());
+            samples.put(phase, new LongAdder());
+        }
+    }
+
+    @Override
+    public void rowsRead(int rows, long input) {
+        rowsRead.add(rows);
+        inputRead.add(input);
+    }
+
+    @Override
+    public void rowsWritten(int rows, long chars) {
+        rowsWritten.add(rows);
+        charsWritten.add(chars);
+    }
+
+    @Override
+    public void conversionError(String column) {
+        errors.increment();
+        LongAdder counter = columnErrors.get(column);
+        if(counter == null) {
+            LongAdder prev = columnErrors.putIfAbsent(column, counter = new LongAdder());
+            if(prev != null) counter = prev;
+        }
+        counter.increment();
+    }
+
+    @Override
+    public void timing(Phase phase, long nanos) {
+        sampledNanos.get(phase).add(nanos);
+        samples.get(phase).increment();
+    }
+
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    /**
+     * @return bytes read from memory mapped files plus chars read from other inputs
+     */
+    public long getInputRead() {
+        return inputRead.sum();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    public long getCharsWritten() {
+        return charsWritten.sum();
+    }
+
+    public long getConversionErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * @return number of conversion errors by column name
+     */
+    public Map<String, Long> getColumnErrors() {
+        Map<String, Long> res = new TreeMap<>();
+        for(Map.Entry<String, LongAdder> e : columnErrors.entrySet()) res.put(e.getKey(), e.getValue().sum());
+        return res;
+    }
+
+    /**
+     * @return number of rows timed in phase
+     */
+    public long getSamples(Phase phase) {
+        return samples.get(phase).sum();
+    }
+
+    /**
+     * @return mean time of phase per sampled row in nanoseconds, 0 if there are no samples
+     */
+    public double getMeanNanos(Phase phase) {
+        long count = samples.get(phase).sum();
+        return count == 0 ? 0 : (double) sampledNanos.get(phase).sum() / count;
+    }
+
+    public void reset() {
+        rowsRead.reset();
+        inputRead.reset();
+        rowsWritten.reset();
+        charsWritten.reset();
+        errors.reset();
+        columnErrors.clear();
+        for(Phase phase : Phase.values()) {
+            sampledNanos.get(phase).reset();
+            samples.get(phase).reset();
+        }
+    }
+}
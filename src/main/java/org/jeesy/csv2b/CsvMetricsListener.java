@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+/**
+ * Receives counters and timings from readers and writers of the model it is set to by {@link CsvModel#withMetrics(CsvMetricsListener)}.
+ * Rows are reported in batches, timings are taken only for sampled rows, so listener calls are rare.
+ * Listener can be called from several threads at once.
+ * @see CsvMetrics
+ * @author Artem Mironov
+ */
+public interface CsvMetricsListener {
+    /**
+     * Every that many rows is timed
+     */
+    int SAMPLE_INTERVAL = 1024;
+
+    /**
+     * Parts of row processing timed for sampled rows
+     */
+    enum Phase {
+        /**
+         * Splitting input to fields
+         */
+        PARSE,
+        /**
+         * Converting field values to property types
+         */
+        CONVERT,
+        /**
+         * Setting converted values to bean properties
+         */
+        SET,
+        /**
+         * Formatting and escaping row to the output buffer
+         */
+        WRITE
+    }
+
+    /**
+     * @param rows number of non empty rows read since the last call
+     * @param input amount of input consumed by them, bytes for memory mapped files and chars otherwise
+     */
+    void rowsRead(int rows, long input);
+
+    /**
+     * @param rows number of rows written since the last call
+     * @param chars number of chars passed to the underlying writer
+     */
+    void rowsWritten(int rows, long chars);
+
+    /**
+     * Value of the column can't be converted to or from its property
+     * @param column column name from header, or #number for columns out of the header
+     */
+    void conversionError(String column);
+
+    /**
+     * Time spent in phase by single sampled row
+     */
+    void timing(Phase phase, long nanos);
+}
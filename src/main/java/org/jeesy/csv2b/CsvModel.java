@@ -21,8 +21,20 @@ import org.jeesy.classinfo.converter.api.ConversionService;
 import org.jeesy.classinfo.indexes.CommonClassIndex;
 import org.jeesy.classinfo.indexes.PropertyIndex;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 import static org.jeesy.classinfo.ClassInfoScanner.classInfo;
@@ -38,6 +50,10 @@ public class CsvModel {
     private boolean ignoreEmptyLines = true;
     private char commentChar = '#';
     private ConversionService converter = defaultConverter();
+    //value cache sizes by column name
+    private Map<String, Integer> columnCaches = Collections.emptyMap();
+    private final CsvPlanCache plans = new CsvPlanCache(this);
+    private CsvMetricsListener metrics;
 
     public CsvModel(char separatorChar, char quoteChar, String endOfLine, boolean ignoreEmptyLines, char commentChar, ConversionService converter) {
         this.separatorChar = separatorChar;
@@ -48,10 +64,228 @@ public class CsvModel {
         this.converter = converter;
     }
 
+    /**
+     * Create model with the same settings what caches repeated values of specified columns for bean readers.
+     * Same as {@link CsvCol#cacheSize()} but for columns of any bean type.
+     * @param size max number of distinct values cached per column
+     * @param columns column names
+     */
+    public CsvModel withColumnCache(int size, String... columns) {
+        if(size <= 0) throw new IllegalArgumentException("Cache size should be positive");
+        CsvModel model = copy();
+        Map<String, Integer> caches = new HashMap<>(columnCaches);
+        for(String column : columns) caches.put(column, size);
+        model.columnCaches = Collections.unmodifiableMap(caches);
+        return model;
+    }
+
+    /**
+     * Create model with the same settings what reports counters and sampled timings of its readers and writers to listener.
+     * Readers and writers take listener when created.
+     * @param metrics listener or null to disable metrics
+     */
+    public CsvModel withMetrics(CsvMetricsListener metrics) {
+        CsvModel model = copy();
+        model.metrics = metrics;
+        return model;
+    }
+
+    private CsvModel copy() {
+        CsvModel model = new CsvModel(separatorChar, quoteChar, endOfLine, ignoreEmptyLines, commentChar, converter);
+        model.columnCaches = columnCaches;
+        model.metrics = metrics;
+        return model;
+    }
+
+    /**
+     * @return value cache size for the column or 0 if values are not cached
+     */
+    public int getColumnCacheSize(String column) {
+        Integer size = columnCaches.get(column);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * Compiled bindings of bean type for the header, shared by readers and writers of this model
+     * @param header column names or null for the header declared by bean type
+     */
+    <T> CsvBindingPlan<T> bindingPlan(Class<T> beanType, String [] header) {
+        return plans.get(beanType, header);
+    }
+
+    /**
+     * Compile bindings of bean types for their declared headers ahead of reading and writing
+     */
+    public void warmUp(Class<?>... beanTypes) {
+        for(Class<?> type : beanTypes) plans.get(type, null);
+    }
+
+    /**
+     * Compile bindings of bean type for the header files are expected to have
+     */
+    public void warmUp(Class<?> beanType, String [] header) {
+        plans.get(beanType, header);
+    }
+
+    /**
+     * @return number of readers and writers what reused compiled bindings
+     */
+    public long getPlanCacheHits() {
+        return plans.hits();
+    }
+
+    /**
+     * @return number of times bindings were compiled
+     */
+    public long getPlanCacheMisses() {
+        return plans.misses();
+    }
+
+    public int getPlanCacheSize() {
+        return plans.size();
+    }
+
+    /**
+     * Drop compiled bindings, for example after bean classes were reloaded
+     */
+    public void clearPlanCache() {
+        plans.clear();
+    }
+
     public CsvReader newReader(Reader reader) {
         return new CsvReader(reader, this);
     }
 
+    /**
+     * Create reader over memory mapped UTF-8 file
+     * @see CsvByteTokenizer
+     */
+    public CsvReader newReader(Path path) throws CsvException {
+        return newReader(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create reader over memory mapped file
+     * @param charset UTF-8 or single byte ASCII compatible charset
+     * @see CsvByteTokenizer
+     */
+    public CsvReader newReader(Path path, Charset charset) throws CsvException {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            return new CsvReader(new CsvByteTokenizer(channel, charset, this), this);
+        } catch (IOException|RuntimeException e) {
+            closeQuietly(channel);
+            if(e instanceof CsvException) throw (CsvException) e;
+            throw new CsvException(e);
+        }
+    }
+
+    /**
+     * Create reader over memory mapped UTF-8 file, starting from current channel position.
+     * Channel will be closed with the reader.
+     * @see CsvByteTokenizer
+     */
+    public CsvReader newReader(FileChannel channel) throws CsvException {
+        return newReader(channel, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create reader over memory mapped file, starting from current channel position.
+     * Channel will be closed with the reader.
+     * @param charset UTF-8 or single byte ASCII compatible charset
+     * @see CsvByteTokenizer
+     */
+    public CsvReader newReader(FileChannel channel, Charset charset) throws CsvException {
+        try {
+            return new CsvReader(new CsvByteTokenizer(channel, charset, this), this);
+        } catch (IOException e) {
+            throw new CsvException(e);
+        }
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if(closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Create reader what reads input on background thread with default memory budget
+     * @see CsvPrefetchReader
+     */
+    public CsvReader newPrefetchReader(Reader reader) {
+        return newReader(new CsvPrefetchReader(reader));
+    }
+
+    /**
+     * Create bean reader what reads input on background thread with default memory budget
+     * @see CsvPrefetchReader
+     */
+    public <T> CsvBeanReader<T> newPrefetchBeanReader(Class<T> beanType, Reader reader, boolean readHeader) throws CsvException {
+        return newBeanReader(beanType, new CsvPrefetchReader(reader), readHeader);
+    }
+
+    /**
+     * Reader what inflates and decodes compressed stream by large blocks on background thread
+     */
+    private static Reader compressedReader(InputStream in, CsvCompression compression, Charset charset) throws CsvException {
+        try {
+            InputStream data = compression.decompress(in, CsvCompression.DEFAULT_BUFFER_SIZE);
+            return new CsvPrefetchReader(new InputStreamReader(data, charset));
+        } catch (IOException e) {
+            closeQuietly(in);
+            throw new CsvException(e);
+        }
+    }
+
+    /**
+     * Create reader over compressed stream, data is decompressed on background thread
+     */
+    public CsvReader newCompressedReader(InputStream in, CsvCompression compression, Charset charset) throws CsvException {
+        return newReader(compressedReader(in, compression, charset));
+    }
+
+    /**
+     * Create reader over compressed file, data is decompressed on background thread
+     */
+    public CsvReader newCompressedReader(Path path, CsvCompression compression, Charset charset) throws CsvException {
+        try {
+            return newCompressedReader(Files.newInputStream(path), compression, charset);
+        } catch (IOException e) {
+            throw new CsvException(e);
+        }
+    }
+
+    /**
+     * Create bean reader over compressed stream, data is decompressed on background thread
+     */
+    public <T> CsvBeanReader<T> newCompressedBeanReader(Class<T> beanType, InputStream in, CsvCompression compression,
+                                                        Charset charset, boolean readHeader) throws CsvException {
+        Reader reader = compressedReader(in, compression, charset);
+        try {
+            return newBeanReader(beanType, reader, readHeader);
+        } catch (RuntimeException e) {
+            //stops decompressing thread and closes the stream
+            closeQuietly(reader);
+            throw e;
+        }
+    }
+
+    /**
+     * Create bean reader over compressed file, data is decompressed on background thread
+     */
+    public <T> CsvBeanReader<T> newCompressedBeanReader(Class<T> beanType, Path path, CsvCompression compression,
+                                                        Charset charset, boolean readHeader) throws CsvException {
+        try {
+            return newCompressedBeanReader(beanType, Files.newInputStream(path), compression, charset, readHeader);
+        } catch (IOException e) {
+            throw new CsvException(e);
+        }
+    }
+
     public <T> CsvBeanReader<T> newBeanReader(Class<T> beanType, Reader reader, boolean readHeader) throws CsvException {
         return new CsvBeanReader<>(beanType, reader, readHeader, this);
     }
@@ -60,6 +294,91 @@ public class CsvModel {
         return new CsvBeanReader<>(beanType, reader, header, this);
     }
 
+    /**
+     * Create bean reader over memory mapped UTF-8 file, it can seek to rows by {@link CsvRowIndex}
+     * @see CsvByteTokenizer
+     */
+    public <T> CsvBeanReader<T> newBeanReader(Class<T> beanType, Path path, boolean readHeader) throws CsvException {
+        return newBeanReader(beanType, path, StandardCharsets.UTF_8, readHeader);
+    }
+
+    /**
+     * Create bean reader over memory mapped file, it can seek to rows by {@link CsvRowIndex}
+     * @param charset UTF-8 or single byte ASCII compatible charset
+     * @see CsvByteTokenizer
+     */
+    public <T> CsvBeanReader<T> newBeanReader(Class<T> beanType, Path path, Charset charset, boolean readHeader) throws CsvException {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            return new CsvBeanReader<>(beanType, new CsvByteTokenizer(channel, charset, this), readHeader, this);
+        } catch (IOException|RuntimeException e) {
+            closeQuietly(channel);
+            if(e instanceof CsvException) throw (CsvException) e;
+            throw new CsvException(e);
+        }
+    }
+
+    /**
+     * Create lookup table over UTF-8 file keyed by given columns
+     * @see CsvLookupTable
+     */
+    public <T> CsvLookupTable<T> newLookupTable(Class<T> beanType, Path path, boolean readHeader, String... keyColumns) throws CsvException {
+        return new CsvLookupTable<>(beanType, path, StandardCharsets.UTF_8, readHeader, this, keyColumns);
+    }
+
+    /**
+     * Load row index of UTF-8 file from its sidecar file or build and save it if it is missing or stale
+     * @param interval number of rows between index entries
+     * @see CsvRowIndex#forFile(Path, Charset, CsvModel, int)
+     */
+    public CsvRowIndex rowIndex(Path path, int interval) throws CsvException {
+        return CsvRowIndex.forFile(path, StandardCharsets.UTF_8, this, interval);
+    }
+
+    /**
+     * Create reader what parses large UTF-8 file on several cores
+     * @see CsvParallelBeanReader
+     */
+    public <T> CsvParallelBeanReader<T> newParallelBeanReader(Class<T> beanType, Path path, boolean readHeader) throws CsvException {
+        return new CsvParallelBeanReader<>(beanType, path, readHeader, this);
+    }
+
+    /**
+     * Create columnar reader what takes header from the first row
+     */
+    public CsvColumnarReader newColumnarReader(Reader reader) throws CsvException {
+        return new CsvColumnarReader(reader, this);
+    }
+
+    public CsvColumnarReader newColumnarReader(Reader reader, String [] header) {
+        return new CsvColumnarReader(reader, header, this);
+    }
+
+    /**
+     * Create external sorter, keys are added to it before sorting
+     * @see CsvSorter
+     */
+    public CsvSorter newSorter() {
+        return new CsvSorter(this);
+    }
+
+    /**
+     * Create group by aggregator, keys and aggregates are added to it before reading
+     * @see CsvAggregator
+     */
+    public CsvAggregator newAggregator() {
+        return new CsvAggregator(this);
+    }
+
+    /**
+     * Create hash join, keys are set to it before joining
+     * @see CsvJoin
+     */
+    public CsvJoin newJoin() {
+        return new CsvJoin(this);
+    }
+
     public CsvWriter newWriter(Writer writer) {
         return new CsvWriter(writer, this);
     }
@@ -68,6 +387,42 @@ public class CsvModel {
         return new CsvBeanWriter<>(beanType, writer, this);
     }
 
+    /**
+     * Create writer what splits beans to files in directory
+     * @see CsvPartitionedWriter
+     */
+    public <T> CsvPartitionedWriter<T> newPartitionedWriter(Class<T> beanType, Path directory, String baseName) {
+        return new CsvPartitionedWriter<>(beanType, directory, baseName, this);
+    }
+
+    private static Writer compressedWriter(OutputStream out, CsvCompression compression, Charset charset, int level, int bufferSize) throws CsvException {
+        try {
+            return new OutputStreamWriter(compression.compress(out, level, bufferSize), charset);
+        } catch (IOException e) {
+            closeQuietly(out);
+            throw new CsvException(e);
+        }
+    }
+
+    /**
+     * Create writer what compresses output, closing the writer finishes compressed stream
+     * @param level {@link java.util.zip.Deflater} compression level
+     * @param bufferSize compressor buffer size
+     */
+    public CsvWriter newCompressedWriter(OutputStream out, CsvCompression compression, Charset charset, int level, int bufferSize) throws CsvException {
+        return newWriter(compressedWriter(out, compression, charset, level, bufferSize));
+    }
+
+    /**
+     * Create bean writer what compresses output, closing the writer finishes compressed stream
+     * @param level {@link java.util.zip.Deflater} compression level
+     * @param bufferSize compressor buffer size
+     */
+    public <T> CsvBeanWriter<T> newCompressedBeanWriter(Class<T> beanType, OutputStream out, CsvCompression compression,
+                                                        Charset charset, int level, int bufferSize) throws CsvException {
+        return newBeanWriter(beanType, compressedWriter(out, compression, charset, level, bufferSize));
+    }
+
     public char getSeparatorChar() {
         return separatorChar;
     }
@@ -88,6 +443,13 @@ public class CsvModel {
         return commentChar;
     }
 
+    /**
+     * @return metrics listener or null if metrics are disabled
+     */
+    public CsvMetricsListener getMetrics() {
+        return metrics;
+    }
+
     public ConversionService getConverter() {
         return converter;
     }
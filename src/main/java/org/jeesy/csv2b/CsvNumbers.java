@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+/**
+ * Number and boolean parsing directly from chars without creating strings.
+ * Integers are accepted in ASCII decimal form {@link Long#parseLong(String)} accepts,
+ * doubles what can't be parsed exactly by fast path are passed to {@link Double#parseDouble(String)}.
+ * @author Artem Mironov
+ */
+final class CsvNumbers {
+    //doubles with mantissa below 2^53 and such decimal exponent are exact after single multiplication or division
+    private static final double [] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long MAX_EXACT_MANTISSA = (1L << 53) / 10;
+
+    private CsvNumbers() {
+    }
+
+    private static NumberFormatException error(CharSequence cs, int start, int end) {
+        return new NumberFormatException("For input string: \"" + cs.subSequence(start, end) + "\"");
+    }
+
+    static int parseInt(CharSequence cs, int start, int end) {
+        long val = parseLong(cs, start, end);
+        if(val < Integer.MIN_VALUE || val > Integer.MAX_VALUE) throw error(cs, start, end);
+        return (int) val;
+    }
+
+    static long parseLong(CharSequence cs, int start, int end) {
+        if(start >= end) throw error(cs, start, end);
+        int i = start;
+        boolean negative = false;
+        char c = cs.charAt(i);
+        if(c == '-' || c == '+') {
+            negative = c == '-';
+            if(++i == end) throw error(cs, start, end);
+        }
+        //accumulate negatively to hold Long.MIN_VALUE
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multmin = limit / 10;
+        long result = 0;
+        for(; i<end; i++) {
+            int digit = cs.charAt(i) - '0';
+            if(digit < 0 || digit > 9 || result < multmin) throw error(cs, start, end);
+            result *= 10;
+            if(result < limit + digit) throw error(cs, start, end);
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Same as {@link Boolean#parseBoolean(String)}: true if chars are "true" ignoring case, false otherwise
+     */
+    static boolean parseBoolean(CharSequence cs, int start, int end) {
+        if(end - start != 4) return false;
+        for(int i = 0; i<4; i++) {
+            if(Character.toLowerCase(cs.charAt(start + i)) != "true".charAt(i)) return false;
+        }
+        return true;
+    }
+
+    static double parseDouble(CharSequence cs, int start, int end) {
+        if(start >= end) throw error(cs, start, end);
+        int i = start;
+        boolean negative = false;
+        char c = cs.charAt(i);
+        if(c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        for(; i<end; i++) {
+            c = cs.charAt(i);
+            if(c < '0' || c > '9') break;
+            if(mantissa >= MAX_EXACT_MANTISSA) return slowParseDouble(cs, start, end);
+            mantissa = mantissa * 10 + (c - '0');
+            digits++;
+        }
+        if(i < end && cs.charAt(i) == '.') {
+            for(i++; i<end; i++) {
+                c = cs.charAt(i);
+                if(c < '0' || c > '9') break;
+                if(mantissa >= MAX_EXACT_MANTISSA) return slowParseDouble(cs, start, end);
+                mantissa = mantissa * 10 + (c - '0');
+                exponent--;
+                digits++;
+            }
+        }
+        if(digits == 0) return slowParseDouble(cs, start, end);
+        if(i < end && (cs.charAt(i) == 'e' || cs.charAt(i) == 'E')) {
+            int expStart = ++i;
+            if(i < end && (cs.charAt(i) == '-' || cs.charAt(i) == '+')) i++;
+            if(i == end) return slowParseDouble(cs, start, end);
+            int exp = 0;
+            for(; i<end; i++) {
+                c = cs.charAt(i);
+                if(c < '0' || c > '9' || exp > 1000) return slowParseDouble(cs, start, end);
+                exp = exp * 10 + (c - '0');
+            }
+            exponent += cs.charAt(expStart) == '-' ? -exp : exp;
+        }
+        if(i != end) return slowParseDouble(cs, start, end);
+        double val;
+        if(exponent == 0) val = mantissa;
+        else if(exponent > 0 && exponent < POW10.length) val = mantissa * POW10[exponent];
+        else if(exponent < 0 && -exponent < POW10.length) val = mantissa / POW10[-exponent];
+        else return slowParseDouble(cs, start, end);
+        return negative ? -val : val;
+    }
+
+    private static double slowParseDouble(CharSequence cs, int start, int end) {
+        return Double.parseDouble(cs.subSequence(start, end).toString());
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Read beans from single large file on several cores.
+ * File is split to byte ranges, each range is moved to the real row boundary and parsed by own
+ * {@link CsvByteTokenizer} with the bean mapping of {@link CsvBeanReader} on fork-join pool.
+ * <p>
+ * Reading is done in two passes. First pass only finds row boundaries and counts rows of each range,
+ * range starts are guessed after line feeds and checked against the end of the previous range,
+ * so quoted line breaks are handled correctly. Second pass parses ranges and builds beans.
+ * Row numbers passed to the handler and reported in {@link CsvException} are the same sequential reader reports.
+ * <p>
+ * Handler is always called from the thread invoked {@link #readBeans(RowHandler)}, in ordered mode
+ * rows come in file order, in unordered mode ranges come in order they are finished.
+ * @author Artem Mironov
+ */
+public class CsvParallelBeanReader<T> implements Closeable {
+    public static final long DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final CsvModel model;
+    private final CsvFileSplitter splitter;
+    private final CsvBindingPlan<T> plan;
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean ordered = true;
+    private ForkJoinPool pool;
+
+    public CsvParallelBeanReader(Class<T> beanType, Path path, boolean useHeaderFromFile, CsvModel model) throws CsvException {
+        this(beanType, path, StandardCharsets.UTF_8, useHeaderFromFile, model);
+    }
+
+    public CsvParallelBeanReader(Class<T> beanType, Path path, Charset charset, boolean useHeaderFromFile, CsvModel model) throws CsvException {
+        this.model = model;
+        FileChannel ch = null;
+        try {
+            ch = FileChannel.open(path, StandardOpenOption.READ);
+            this.splitter = new CsvFileSplitter(ch, charset, model, useHeaderFromFile);
+            this.plan = model.bindingPlan(beanType, splitter.getHeader());
+            this.channel = ch;
+        } catch (IOException|RuntimeException e) {
+            if(ch != null) {
+                try {
+                    ch.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if(e instanceof CsvException) throw (CsvException) e;
+            throw new CsvException(e);
+        }
+    }
+
+    private static final class Failure {
+        private final CsvException exception;
+
+        Failure(CsvException exception) {
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Beans and errors of single range in file order
+     */
+    private static final class ChunkResult<T> implements CsvReader.RowHandler<T> {
+        private final List<Object> values = new ArrayList<>();
+        private int [] rowNums = new int[64];
+        private boolean stopped;
+        private RuntimeException failure;
+
+        private void add(int rowNum, Object value) {
+            if(values.size() == rowNums.length) rowNums = Arrays.copyOf(rowNums, rowNums.length * 2);
+            rowNums[values.size()] = rowNum;
+            values.add(value);
+        }
+
+        @Override
+        public boolean onError(CsvException e) {
+            add(e.getRow(), new Failure(e));
+            return true;
+        }
+
+        @Override
+        public boolean onValue(int rowNum, T value) {
+            add(rowNum, value);
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean deliver(CsvReader.RowHandler<T> rowHandler) {
+            for(int i = 0; i<values.size(); i++) {
+                Object value = values.get(i);
+                if(value instanceof Failure) {
+                    if(!rowHandler.onError(((Failure) value).exception)) return false;
+                } else if(!rowHandler.onValue(rowNums[i], (T) value)) {
+                    return false;
+                }
+            }
+            if(failure != null) throw failure;
+            return !stopped;
+        }
+    }
+
+    /**
+     * Second pass: build beans of the range
+     */
+    private ChunkResult<T> parse(CsvFileSplitter.Chunk chunk) {
+        ChunkResult<T> result = new ChunkResult<>();
+        if(chunk.end <= chunk.start) return result;
+        try {
+            CsvByteTokenizer tokenizer = splitter.tokenizer(chunk);
+            CsvBeanReader<T> reader = new CsvBeanReader<>(tokenizer, plan, model);
+            for(;;) {
+                tokenizer.skipPendingLineFeed();
+                if(tokenizer.getPosition() >= chunk.end) break;
+                if(!reader.readOne(result)) {
+                    result.stopped = true;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            result.onError(new CsvException(chunk.rowOffset, 0, e));
+            result.stopped = true;
+        } catch (RuntimeException e) {
+            result.failure = e;
+        }
+        return result;
+    }
+
+    private Callable<ChunkResult<T>> parseTask(final CsvFileSplitter.Chunk chunk) {
+        return new Callable<ChunkResult<T>>() {
+            @Override
+            public ChunkResult<T> call() throws Exception {
+                return parse(chunk);
+            }
+        };
+    }
+
+    private void cancel(Iterable<Future<ChunkResult<T>>> futures) {
+        for(Future<ChunkResult<T>> f : futures) f.cancel(true);
+    }
+
+    /**
+     * Read all beans passing values and errors to rowHandler till it returns false
+     * @param rowHandler handler to accept values and errors, called from current thread only
+     * @return rowHandler parameter
+     */
+    public CsvReader.RowHandler<T> readBeans(CsvReader.RowHandler<T> rowHandler) throws CsvException {
+        ForkJoinPool p = pool != null ? pool : new ForkJoinPool();
+        try {
+            List<CsvFileSplitter.Chunk> chunks = splitter.split(p, chunkSize);
+            int maxInFlight = p.getParallelism() * 2;
+            if(ordered) {
+                Deque<Future<ChunkResult<T>>> inFlight = new ArrayDeque<>();
+                int next = 0;
+                while(next < chunks.size() || !inFlight.isEmpty()) {
+                    while(next < chunks.size() && inFlight.size() < maxInFlight) inFlight.add(p.submit(parseTask(chunks.get(next++))));
+                    if(!CsvFileSplitter.get(inFlight.poll()).deliver(rowHandler)) {
+                        cancel(inFlight);
+                        break;
+                    }
+                }
+            } else {
+                CompletionService<ChunkResult<T>> completion = new ExecutorCompletionService<>(p);
+                List<Future<ChunkResult<T>>> submitted = new ArrayList<>();
+                int next = 0;
+                int done = 0;
+                while(done < chunks.size()) {
+                    while(next < chunks.size() && next - done < maxInFlight) submitted.add(completion.submit(parseTask(chunks.get(next++))));
+                    done++;
+                    if(!CsvFileSplitter.get(completion.take()).deliver(rowHandler)) {
+                        cancel(submitted);
+                        break;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            rowHandler.onError(new CsvException(e));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CsvException(e);
+        } finally {
+            if(pool == null) p.shutdownNow();
+        }
+        return rowHandler;
+    }
+
+    /**
+     * Approximate size of the byte range parsed as single task
+     */
+    public void setChunkSize(long chunkSize) {
+        if(chunkSize <= 0) throw new IllegalArgumentException("Chunk size should be positive");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Deliver rows in file order, true by default
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * Pool to run parsing tasks, if not set new pool is created for each read
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public String [] getHeader() {
+        return plan.getHeader();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Writer what splits beans to several files by partition key and rolls files by row count or size.
+ * Each partition has own buffered {@link CsvBeanWriter}, every file starts with header.
+ * Number of open files is limited, least recently used partition is closed when the limit is reached
+ * and its file is appended to when partition gets more rows.
+ * <p>
+ * Files are named {@code <base>[-<partition>]-<n><extension>} in the output directory,
+ * chars of partition key other than letters, digits, {@code '-'} and {@code '.'} are written
+ * as underscore and four hex digits of the char, so different keys never share a file.
+ * File already written by another partition is never truncated, e.g. when keys differ only in case
+ * on case insensitive file system, {@link CsvException} is thrown instead.
+ * If flush executor is set files are flushed and closed on it, so flushes of different partitions overlap.
+ * Writer itself is not thread safe.
+ * @author Artem Mironov
+ */
+public class CsvPartitionedWriter<T> implements Closeable, Flushable {
+    public static final int DEFAULT_MAX_OPEN_FILES = 64;
+
+    /**
+     * Chooses partition of the bean
+     */
+    public interface Partitioner<T> {
+        /**
+         * @return partition key, beans with equal keys go to the same files
+         */
+        String partitionOf(T bean);
+    }
+
+    private final Class<T> beanType;
+    private final Path directory;
+    private final String baseName;
+    private final String extension;
+    private final CsvModel model;
+    private Partitioner<? super T> partitioner;
+    private long maxRowsPerFile = Long.MAX_VALUE;
+    private long maxFileSize = Long.MAX_VALUE;
+    private int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+    private Charset charset = StandardCharsets.UTF_8;
+    private int bufferSize = CsvWriter.DEFAULT_BUFFER_SIZE;
+    private boolean writeHeader = true;
+    private Executor flushExecutor;
+
+    private final Map<String, Partition> partitions = new HashMap<>();
+    //open partitions in access order
+    private final LinkedHashMap<String, Partition> open = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<Path> files = new ArrayList<>();
+    //closes of rolled files
+    private final List<FutureTask<Void>> pending = new ArrayList<>();
+    private boolean closed = false;
+
+    /**
+     * State of single partition, writer is null while partition is closed
+     */
+    private final class Partition {
+        final String name;
+        int fileNum = 0;
+        Path file;
+        long rows;
+        //chars written to the file by previous writers
+        long size;
+        CsvBeanWriter<T> writer;
+        //close of the previous writer of the same file, it should finish before file is reopened
+        FutureTask<Void> closing;
+
+        Partition(String name) {
+            this.name = name;
+        }
+
+        long currentSize() {
+            return size + (writer == null ? 0 : writer.getWrittenChars());
+        }
+    }
+
+    /**
+     * @param baseName file name, its extension is kept at the end of every file name
+     */
+    public CsvPartitionedWriter(Class<T> beanType, Path directory, String baseName, CsvModel model) {
+        this.beanType = beanType;
+        this.directory = directory;
+        int dot = baseName.lastIndexOf('.');
+        this.baseName = dot > 0 ? baseName.substring(0, dot) : baseName;
+        this.extension = dot > 0 ? baseName.substring(dot) : "";
+        this.model = model;
+    }
+
+    /**
+     * Partitioner to split beans by key, if not set all beans go to the same partition
+     */
+    public void setPartitioner(Partitioner<? super T> partitioner) {
+        this.partitioner = partitioner;
+    }
+
+    /**
+     * Start new file of partition after that many rows, header is not counted
+     */
+    public void setMaxRowsPerFile(long maxRowsPerFile) {
+        if(maxRowsPerFile <= 0) throw new IllegalArgumentException("Max rows should be positive");
+        this.maxRowsPerFile = maxRowsPerFile;
+    }
+
+    /**
+     * Start new file of partition when file reaches that size.
+     * Size is counted in chars, it is the size in bytes for ASCII content.
+     * Files are rolled on row boundary, so file can be larger by a single row.
+     */
+    public void setMaxFileSize(long maxFileSize) {
+        if(maxFileSize <= 0) throw new IllegalArgumentException("Max file size should be positive");
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Max number of files open at once, each open file holds own write buffer
+     */
+    public void setMaxOpenFiles(int maxOpenFiles) {
+        if(maxOpenFiles <= 0) throw new IllegalArgumentException("Max open files should be positive");
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Size of write buffer of each open file
+     */
+    public void setBufferSize(int bufferSize) {
+        if(bufferSize <= 0) throw new IllegalArgumentException("Buffer size should be positive");
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Write header at the start of each file, true by default
+     */
+    public void setWriteHeader(boolean writeHeader) {
+        this.writeHeader = writeHeader;
+    }
+
+    /**
+     * Executor to flush and close files on, null to do it on the writing thread
+     */
+    public void setFlushExecutor(Executor flushExecutor) {
+        this.flushExecutor = flushExecutor;
+    }
+
+    /**
+     * Write bean to the current file of its partition
+     * @throws CsvException for any exception occurred
+     */
+    public void writeBean(T bean) throws CsvException {
+        if(closed) throw new IllegalStateException("Writer is closed");
+        String key = partitioner == null ? "" : partitioner.partitionOf(bean);
+        if(key == null) throw new IllegalArgumentException("Partition key is null");
+        Partition partition = partitions.get(key);
+        if(partition == null) {
+            partition = new Partition(key);
+            partitions.put(key, partition);
+        }
+        try {
+            if(partition.file != null && (partition.rows >= maxRowsPerFile || partition.currentSize() >= maxFileSize)) {
+                if(partition.writer != null) release(partition);
+                partition.file = null;
+            }
+            if(partition.writer == null) acquire(partition);
+        } catch (IOException e) {
+            throw new CsvException(e);
+        }
+        partition.writer.writeBean(bean);
+        partition.rows++;
+    }
+
+    public void writeBeans(Iterable<? extends T> beans) throws CsvException {
+        for(T bean : beans) writeBean(bean);
+    }
+
+    /**
+     * Open file of partition, new file if the previous one is finished
+     */
+    private void acquire(Partition partition) throws IOException {
+        while(open.size() >= maxOpenFiles) {
+            Iterator<Partition> eldest = open.values().iterator();
+            release(eldest.next());
+        }
+        boolean append = partition.file != null;
+        if(append) {
+            await(partition.closing);
+        } else if(partition.closing != null) {
+            //previous file of partition is finished, new one can be written while it is closing
+            pending.add(partition.closing);
+            awaitDone();
+        }
+        partition.closing = null;
+        Path file = append ? partition.file : directory.resolve(fileName(partition));
+        if(!append) checkNotOwned(file);
+        OutputStreamWriter out = new OutputStreamWriter(Files.newOutputStream(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING), charset);
+        //partition moves to the new file only when it is opened, so failed open is retried with header
+        if(!append) {
+            partition.file = file;
+            partition.fileNum++;
+            partition.rows = 0;
+            partition.size = 0;
+            files.add(file);
+        }
+        partition.writer = new CsvBeanWriter<>(beanType, out, model, bufferSize);
+        open.put(partition.name, partition);
+        if(!append && writeHeader) partition.writer.writeHeader();
+    }
+
+    private String fileName(Partition partition) {
+        StringBuilder sb = new StringBuilder(baseName);
+        if(!partition.name.isEmpty()) {
+            sb.append('-');
+            for(int i = 0; i<partition.name.length(); i++) {
+                char c = partition.name.charAt(i);
+                if(Character.isLetterOrDigit(c) || c == '-' || c == '.') sb.append(c);
+                else sb.append('_').append(String.format("%04x", (int) c));
+            }
+        }
+        return sb.append('-').append(partition.fileNum + 1).append(extension).toString();
+    }
+
+    /**
+     * Names of different partitions differ but still can point to the same file on case insensitive file system
+     */
+    private void checkNotOwned(Path file) throws IOException {
+        if(!Files.exists(file)) return;
+        String name = file.getFileName().toString();
+        for(Path other : files) {
+            if(other.getFileName().toString().equalsIgnoreCase(name) && Files.isSameFile(other, file))
+                throw new FileAlreadyExistsException(file.toString(), other.toString(), "File is written by another partition");
+        }
+    }
+
+    /**
+     * Close file of partition, on flush executor if it is set
+     */
+    private void release(Partition partition) throws IOException {
+        final CsvBeanWriter<T> writer = partition.writer;
+        partition.size += writer.getWrittenChars();
+        partition.writer = null;
+        open.remove(partition.name);
+        partition.closing = run(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                writer.close();
+                return null;
+            }
+        });
+    }
+
+    private FutureTask<Void> run(Callable<Void> task) throws IOException {
+        FutureTask<Void> future = new FutureTask<>(task);
+        if(flushExecutor == null) {
+            future.run();
+            await(future);
+            return null;
+        }
+        try {
+            flushExecutor.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.run();
+        }
+        return future;
+    }
+
+    /**
+     * Check finished closes of rolled files
+     */
+    private void awaitDone() throws IOException {
+        for(Iterator<FutureTask<Void>> it = pending.iterator(); it.hasNext(); ) {
+            FutureTask<Void> f = it.next();
+            if(f.isDone()) {
+                it.remove();
+                await(f);
+            }
+        }
+    }
+
+    private static void await(FutureTask<Void> future) throws IOException {
+        if(future == null) return;
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) throw (IOException) cause;
+            if(cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Flush all open files, in parallel if flush executor is set
+     */
+    @Override
+    public void flush() throws IOException {
+        List<FutureTask<Void>> flushes = new ArrayList<>();
+        for(Partition partition : open.values()) {
+            final CsvBeanWriter<T> writer = partition.writer;
+            flushes.add(run(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    writer.flush();
+                    return null;
+                }
+            }));
+        }
+        for(FutureTask<Void> f : flushes) await(f);
+    }
+
+    /**
+     * Close all files and wait till they are written
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) return;
+        closed = true;
+        IOException failure = null;
+        for(Partition partition : new ArrayList<>(open.values())) {
+            try {
+                release(partition);
+            } catch (IOException e) {
+                if(failure == null) failure = e;
+            }
+        }
+        for(Partition partition : partitions.values()) {
+            if(partition.closing != null) pending.add(partition.closing);
+            partition.closing = null;
+        }
+        for(FutureTask<Void> f : pending) {
+            try {
+                await(f);
+            } catch (IOException e) {
+                if(failure == null) failure = e;
+            }
+        }
+        pending.clear();
+        if(failure != null) throw failure;
+    }
+
+    /**
+     * @return files created so far in order they were started
+     */
+    public List<Path> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+}
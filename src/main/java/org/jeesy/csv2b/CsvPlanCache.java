@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import org.jeesy.classinfo.ClassInfo;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.jeesy.classinfo.ClassInfoScanner.classInfo;
+
+/**
+ * Compiled bindings of {@link CsvModel} shared by its bean readers and writers.
+ * Plans are keyed by bean type and header, null header means the one declared by bean type.
+ * Plans are immutable except value caches what are safe to share, so cache needs no locking.
+ * Number of plans is bounded, plans for new headers over the limit are compiled but not kept.
+ * @author Artem Mironov
+ */
+final class CsvPlanCache {
+    static final int MAX_PLANS = 4096;
+
+    private final CsvModel model;
+    private final ConcurrentMap<Key, CsvBindingPlan<?>> plans = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    CsvPlanCache(CsvModel model) {
+        this.model = model;
+    }
+
+    private static final class Key {
+        private final Class<?> type;
+        private final String [] header;
+        private final int hash;
+
+        Key(Class<?> type, String [] header) {
+            this.type = type;
+            this.header = header;
+            this.hash = 31 * type.hashCode() + Arrays.hashCode(header);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return type == key.type && Arrays.equals(header, key.header);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> CsvBindingPlan<T> get(Class<T> type, String [] header) {
+        CsvBindingPlan<?> plan = plans.get(new Key(type, header));
+        if(plan != null) {
+            hits.increment();
+            return (CsvBindingPlan<T>) plan;
+        }
+        misses.increment();
+        //header is copied as it is shared by all users of the plan
+        String [] copy = header == null ? null : header.clone();
+        ClassInfo<T> ci = classInfo(type);
+        CsvBindingPlan<T> compiled = CsvBindingPlan.compile(ci, copy == null ? ci.getIndex(CsvIndex.class).getHeader() : copy, model);
+        if(plans.size() >= MAX_PLANS) return compiled;
+        CsvBindingPlan<?> prev = plans.putIfAbsent(new Key(type, copy), compiled);
+        if(prev != null) return (CsvBindingPlan<T>) prev;
+        //files usually have the declared header, so the plan is found by it too
+        if(copy == null) plans.putIfAbsent(new Key(type, compiled.getHeader()), compiled);
+        return compiled;
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    int size() {
+        return plans.size();
+    }
+
+    void clear() {
+        plans.clear();
+    }
+}
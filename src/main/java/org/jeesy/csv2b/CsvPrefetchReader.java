@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reader what reads underlying input on background thread into fixed set of blocks,
+ * so parsing doesn't wait for each I/O call.
+ * Each block gets the data of single read call, so rows are available as soon as input delivers them.
+ * Blocks are recycled after they are consumed: memory is bounded by block size multiplied by block count
+ * and background thread waits when all blocks are filled.
+ * Input errors are rethrown to the consumer after the data read before them.
+ * Should be used by single consumer thread.
+ * @author Artem Mironov
+ */
+public class CsvPrefetchReader extends Reader {
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    public static final int DEFAULT_BLOCKS = 4;
+
+    private static final class Block {
+        final char [] data;
+        int length;
+        boolean eof;
+        IOException error;
+
+        Block(int size) {
+            data = new char[size];
+        }
+    }
+
+    private final Reader source;
+    private final BlockingQueue<Block> free;
+    //one more place for the error block
+    private final BlockingQueue<Block> filled;
+    private final Thread thread;
+    private volatile boolean closed = false;
+    private Block current;
+    private int pos = 0;
+
+    public CsvPrefetchReader(Reader source) {
+        this(source, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS);
+    }
+
+    /**
+     * Start reading input in background
+     * @param blockSize chars in each block
+     * @param blocks number of blocks, at least 2 to read and parse at the same time
+     */
+    public CsvPrefetchReader(Reader source, int blockSize, int blocks) {
+        if(blockSize <= 0) throw new IllegalArgumentException("Block size should be positive");
+        if(blocks < 2) throw new IllegalArgumentException("At least 2 blocks required");
+        this.source = source;
+        this.free = new ArrayBlockingQueue<>(blocks);
+        this.filled = new ArrayBlockingQueue<>(blocks + 1);
+        for(int i = 0; i<blocks; i++) free.add(new Block(blockSize));
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prefetch();
+            }
+        }, "csv2b-prefetch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void prefetch() {
+        try {
+            for(;;) {
+                Block block = free.take();
+                block.length = 0;
+                try {
+                    //block is passed on after each read, so rows of slow input are not held till the block is full
+                    int n;
+                    do {
+                        n = source.read(block.data, 0, block.data.length);
+                    } while(n == 0);
+                    if(n < 0) block.eof = true;
+                    else block.length = n;
+                } catch (IOException e) {
+                    block.error = e;
+                } catch (RuntimeException e) {
+                    block.error = new IOException(e);
+                }
+                filled.put(block);
+                if(block.eof || block.error != null) return;
+            }
+        } catch (InterruptedException e) {
+            //closed
+        }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if(closed) throw new IOException("Reader closed");
+        if(len == 0) return 0;
+        while(current == null || pos == current.length) {
+            if(current != null) {
+                if(current.error != null) throw current.error;
+                if(current.eof) return -1;
+                free.add(current);
+            }
+            try {
+                current = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for input");
+            }
+            pos = 0;
+        }
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current.data, pos, cbuf, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed) return;
+        closed = true;
+        thread.interrupt();
+        source.close();
+    }
+}
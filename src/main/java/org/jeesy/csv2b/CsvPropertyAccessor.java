@@ -0,0 +1,312 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Getter and setter for dot separated property path built from method handles.
+ * Handles for all path elements are composed once, so access to the property is a single handle invocation.
+ * Getter returns null if some intermediate object is null, setter creates null intermediate objects
+ * with their no-arg constructors.
+ * Property is accessed by public bean getter/setter if declared, otherwise by field.
+ * @author Artem Mironov
+ */
+final class CsvPropertyAccessor {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodHandle IS_NULL;
+    private static final MethodHandle GET_OR_CREATE;
+    static {
+        try {
+            IS_NULL = LOOKUP.findStatic(CsvPropertyAccessor.class, "isNull", MethodType.methodType(boolean.class, Object.class));
+            GET_OR_CREATE = LOOKUP.findStatic(CsvPropertyAccessor.class, "getOrCreate",
+                    MethodType.methodType(Object.class, MethodHandle.class, MethodHandle.class, MethodHandle.class, Object.class));
+        } catch (NoSuchMethodException|IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final String path;
+    private final Class<?> type;
+    //(Object)Object
+    private final MethodHandle getter;
+    //(Object,Object)void
+    private final MethodHandle setter;
+    //(Object)Object, null for plain properties
+    private final MethodHandle owner;
+    //(Object)Object null safe getter of the object holding the property, null for plain properties
+    private final MethodHandle target;
+    //(Object)P and (Object,P)void for primitive property type P, null for other types
+    private final MethodHandle primitiveGetter;
+    private final MethodHandle primitiveSetter;
+
+    private CsvPropertyAccessor(String path, Class<?> type, MethodHandle getter, MethodHandle setter, MethodHandle owner,
+                                MethodHandle target, MethodHandle primitiveGetter, MethodHandle primitiveSetter) {
+        this.path = path;
+        this.type = type;
+        this.getter = getter;
+        this.setter = setter;
+        this.owner = owner;
+        this.target = target;
+        this.primitiveGetter = primitiveGetter;
+        this.primitiveSetter = primitiveSetter;
+    }
+
+    /**
+     * Build accessor for property path
+     * @param beanType root bean type
+     * @param path dot separated property path
+     * @throws IllegalStateException if property not found or not accessible
+     */
+    static CsvPropertyAccessor forPath(Class<?> beanType, String path) {
+        String [] names = path.split("\\.");
+        Class<?> current = beanType;
+        MethodHandle getter = null;
+        MethodHandle owner = null;
+        MethodHandle target = null;
+        MethodHandle [] last = null;
+        for(int i = 0; i<names.length; i++) {
+            target = getter;
+            MethodHandle [] handles = handles(current, names[i], path);
+            Class<?> propertyType = handles[0].type().returnType();
+            MethodHandle get = handles[0].asType(GETTER_TYPE);
+            if(i < names.length - 1) {
+                MethodHandle create = constructor(propertyType, path);
+                MethodHandle getOrCreate = MethodHandles.insertArguments(GET_OR_CREATE, 0, get, handles[1].asType(SETTER_TYPE), create);
+                owner = owner == null ? getOrCreate : MethodHandles.filterReturnValue(owner, getOrCreate);
+            }
+            getter = getter == null ? get : MethodHandles.filterReturnValue(getter, nullSafe(get));
+            last = handles;
+            current = propertyType;
+        }
+        MethodHandle setter = last[1].asType(SETTER_TYPE);
+        if(owner != null) setter = MethodHandles.filterArguments(setter, 0, owner);
+        MethodHandle primitiveGetter = null;
+        MethodHandle primitiveSetter = null;
+        if(current.isPrimitive()) {
+            primitiveGetter = last[0].asType(MethodType.methodType(current, Object.class));
+            primitiveSetter = last[1].asType(MethodType.methodType(void.class, Object.class, current));
+            if(owner != null) primitiveSetter = MethodHandles.filterArguments(primitiveSetter, 0, owner);
+        }
+        return new CsvPropertyAccessor(path, current, getter, setter, owner, target, primitiveGetter, primitiveSetter);
+    }
+
+    /**
+     * @return getter and setter handles for property declared in type or its parents
+     */
+    private static MethodHandle [] handles(Class<?> type, String name, String path) {
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        try {
+            Method get = publicMethod(type, "get" + suffix);
+            if(get == null) get = publicMethod(type, "is" + suffix);
+            if(get != null) {
+                Method set = publicMethod(type, "set" + suffix, get.getReturnType());
+                if(set != null) {
+                    get.setAccessible(true);
+                    set.setAccessible(true);
+                    return new MethodHandle[] {LOOKUP.unreflect(get), LOOKUP.unreflect(set)};
+                }
+            }
+            for(Class<?> c = type; c != null; c = c.getSuperclass()) {
+                try {
+                    Field field = c.getDeclaredField(name);
+                    if(Modifier.isStatic(field.getModifiers())) break;
+                    field.setAccessible(true);
+                    return new MethodHandle[] {LOOKUP.unreflectGetter(field), LOOKUP.unreflectSetter(field)};
+                } catch (NoSuchFieldException ignored) {
+                }
+            }
+        } catch (IllegalAccessException|RuntimeException e) {
+            throw new IllegalStateException("Cannot access property " + path + " in " + type, e);
+        }
+        throw new IllegalStateException("Cannot find property " + path + " in " + type);
+    }
+
+    private static Method publicMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            Method m = type.getMethod(name, parameterTypes);
+            return Modifier.isStatic(m.getModifiers()) ? null : m;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> type, String path) {
+        try {
+            Constructor<?> c = type.getDeclaredConstructor();
+            c.setAccessible(true);
+            return LOOKUP.unreflectConstructor(c).asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException|IllegalAccessException|RuntimeException e) {
+            throw new IllegalStateException("Cannot create instance of " + type + " for " + path, e);
+        }
+    }
+
+    private static MethodHandle nullSafe(MethodHandle getter) {
+        MethodHandle nullResult = MethodHandles.dropArguments(MethodHandles.constant(Object.class, null), 0, Object.class);
+        return MethodHandles.guardWithTest(IS_NULL, nullResult, getter);
+    }
+
+    private static boolean isNull(Object o) {
+        return o == null;
+    }
+
+    private static Object getOrCreate(MethodHandle getter, MethodHandle setter, MethodHandle constructor, Object target) throws Throwable {
+        Object val = (Object) getter.invokeExact(target);
+        if(val == null) {
+            val = (Object) constructor.invokeExact();
+            setter.invokeExact(target, val);
+        }
+        return val;
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if(t instanceof RuntimeException) return (RuntimeException) t;
+        if(t instanceof Error) throw (Error) t;
+        return new IllegalStateException(t);
+    }
+
+    /**
+     * @return property value or null if some intermediate object is null
+     */
+    Object get(Object bean) {
+        try {
+            return (Object) getter.invokeExact(bean);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Set property value creating null intermediate objects
+     */
+    void set(Object bean, Object value) {
+        try {
+            setter.invokeExact(bean, value);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Create null intermediate objects without setting the value
+     */
+    void createOwners(Object bean) {
+        if(owner == null) return;
+        try {
+            Object ignored = (Object) owner.invokeExact(bean);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * @return object holding the property or null if some intermediate object is null
+     */
+    Object target(Object bean) {
+        if(target == null) return bean;
+        try {
+            return (Object) target.invokeExact(bean);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /*
+     * Primitive access without boxing, getters take object returned by target(bean)
+     * and setters create null intermediate objects the same way set does.
+     * Can be used only for the property of the corresponding primitive type.
+     */
+
+    int getInt(Object target) {
+        try {
+            return (int) primitiveGetter.invokeExact(target);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    long getLong(Object target) {
+        try {
+            return (long) primitiveGetter.invokeExact(target);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    double getDouble(Object target) {
+        try {
+            return (double) primitiveGetter.invokeExact(target);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    boolean getBoolean(Object target) {
+        try {
+            return (boolean) primitiveGetter.invokeExact(target);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    void setInt(Object bean, int value) {
+        try {
+            primitiveSetter.invokeExact(bean, value);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    void setLong(Object bean, long value) {
+        try {
+            primitiveSetter.invokeExact(bean, value);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    void setDouble(Object bean, double value) {
+        try {
+            primitiveSetter.invokeExact(bean, value);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    void setBoolean(Object bean, boolean value) {
+        try {
+            primitiveSetter.invokeExact(bean, value);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    Class<?> getType() {
+        return type;
+    }
+}
@@ -26,28 +26,64 @@ import java.util.List;
  * @author Artem Mironov
  */
 public class CsvReader implements Closeable {
-    private final Reader reader;
+    private final CsvTokenizer tokenizer;
     private final CsvModel model;
+    private final ColumnAdapter columnAdapter = new ColumnAdapter();
+    //reused by readRow, only the result array is allocated per row
+    private final ArrayColumnProcessor rowProcessor = new ArrayColumnProcessor();
+    //projected[colNum] is true for columns to read, columns after the array are read only if projectRest is set
+    private boolean [] projected;
+    private boolean projectRest;
 
     protected CsvReader(Reader reader, CsvModel model) {
-        this.reader = reader;
+        this(new CsvCharTokenizer(reader, model), model);
+    }
+
+    protected CsvReader(CsvTokenizer tokenizer, CsvModel model) {
+        this.tokenizer = tokenizer;
         this.model = model;
+        this.metrics = model.getMetrics();
+        this.reportedPosition = tokenizer.getPosition();
+    }
+
+    //rows are reported to metrics in batches of this size
+    private static final int REPORT_ROWS = 1024;
+    protected final CsvMetricsListener metrics;
+    private int pendingRows = 0;
+    private long reportedPosition;
+    private int sampleCounter = 0;
+    //time column processor spent in sampled row, active only while sampled row is read
+    final RowTimer rowTimer = new RowTimer();
+
+    static final class RowTimer {
+        boolean active;
+        long convertNanos;
+        long setNanos;
     }
 
 
     protected int rowNum = 0;
     protected int colNum = 0;
-    private boolean wasCR = false;
 
     public interface ColumnProcessor {
         boolean onValue(int rowNum, int colNum, String value);
     }
 
+    /**
+     * Column processor what accepts field content without creating string for it.
+     * Value is valid only till method returns.
+     */
+    interface CharsColumnProcessor extends ColumnProcessor {
+        boolean onChars(int rowNum, int colNum, CharSequence value);
+    }
+
     public class ArrayColumnProcessor implements ColumnProcessor {
         private List<String> data = new ArrayList<>();
 
         @Override
         public boolean onValue(int rowNum, int colNum, String value) {
+            //columns skipped by projection are left null
+            while(data.size() < colNum - 1) data.add(null);
             data.add(value);
             return true;
         }
@@ -59,6 +95,30 @@ public class CsvReader implements Closeable {
         public String [] toArray() {
             return data.toArray(new String[data.size()]);
         }
+
+        /**
+         * Add nulls for columns skipped by projection after the last read one
+         */
+        void padTo(int fieldCount) {
+            while(data.size() < fieldCount) data.add(null);
+        }
+    }
+
+    /**
+     * Pass tokenizer fields to column processor as strings
+     */
+    private final class ColumnAdapter implements CsvTokenizer.FieldHandler {
+        private ColumnProcessor processor;
+        private CharsColumnProcessor charsProcessor;
+
+        @Override
+        public boolean onField(int rowNum, int colNum, CharSequence value) {
+            CsvReader.this.rowNum = rowNum;
+            CsvReader.this.colNum = colNum;
+            if(!isProjected(projected, projectRest, colNum)) return true;
+            if(charsProcessor != null) return charsProcessor.onChars(rowNum, colNum, value);
+            return processor.onValue(rowNum, colNum, value.toString());
+        }
     }
 
     public interface RowHandler<T> {
@@ -106,63 +166,102 @@ public class CsvReader implements Closeable {
         }
     }
 
+    /**
+     * Read only specified columns. Other fields are skipped by tokenizer without creating strings
+     * and are not passed to column processors, rows returned by readRow have nulls in their places.
+     * @param colNums 1-based column numbers, no columns means read everything
+     */
+    public void setProjection(int... colNums) {
+        if(colNums == null || colNums.length == 0) {
+            setProjection(null, false);
+            return;
+        }
+        int max = 0;
+        for(int c : colNums) {
+            if(c <= 0) throw new IllegalArgumentException("Column number should be positive: " + c);
+            max = Math.max(max, c);
+        }
+        boolean [] mask = new boolean[max + 1];
+        for(int c : colNums) mask[c] = true;
+        setProjection(mask, false);
+    }
+
+    /**
+     * @param mask projected[colNum] is true for columns to read, null to read all
+     * @param rest whether columns after the mask should be read
+     */
+    void setProjection(boolean [] mask, boolean rest) {
+        this.projected = mask;
+        this.projectRest = rest;
+    }
+
+    static boolean isProjected(boolean [] projected, boolean rest, int colNum) {
+        return projected == null || (colNum < projected.length ? projected[colNum] : rest);
+    }
+
     /**
      * Return true if it reported any value
      * @param processor column processor what will be called on each column value
      * @throws IOException
      */
     protected boolean realReadRow(ColumnProcessor processor) throws IOException {
-        int val = reader.read();
-        if(val == -1) return false; else rowNum++;
-        StringBuilder out = new StringBuilder();
-        boolean inQuote = false;
-        colNum = 0;
-        boolean delayedQuote = false;
-        boolean anyValue = false;
-        while(val != -1) {
-
-            char charVal = (char) val;
-            if(inQuote) {
-                if(model.getQuoteChar() == charVal) {
-                    delayedQuote = true;
-                    inQuote = false;
-                } else {
-                    out.append(charVal);
-                }
-            } else {
-                if(charVal == model.getQuoteChar()) {
-                  if(delayedQuote) {
-                      out.append(charVal);
-                      inQuote = true;
-
-                  } else {
-                      inQuote = true;
-                  }
-                } else if(charVal == model.getSeparatorChar()) {
-                    if(!processor.onValue(rowNum, ++colNum, out.toString())) return false;
-                    out.setLength(0);
-                    anyValue = true;
-                } else if(charVal == '\n') {
-                    if(wasCR) {
-                        wasCR = false;
-                    } else {
-                        if(colNum > 0 || out.length() > 0 || !model.isIgnoreEmptyLines())
-                            break;
-                    }
-                } else if(charVal == '\r') {
-                    wasCR = true;
-                    if(colNum > 0 || out.length() > 0  || !model.isIgnoreEmptyLines())
-                        break ;
-                } else {
-                    out.append(charVal);
+        if(metrics != null) return measuredReadRow(processor);
+        return plainReadRow(processor);
+    }
+
+    private boolean measuredReadRow(ColumnProcessor processor) throws IOException {
+        RowTimer timer = rowTimer;
+        timer.active = ++sampleCounter % CsvMetricsListener.SAMPLE_INTERVAL == 0;
+        timer.convertNanos = 0;
+        timer.setNanos = 0;
+        long start = timer.active ? System.nanoTime() : 0;
+        boolean ret = false;
+        try {
+            ret = plainReadRow(processor);
+        } finally {
+            if(timer.active) {
+                timer.active = false;
+                long total = System.nanoTime() - start;
+                metrics.timing(CsvMetricsListener.Phase.PARSE, total - timer.convertNanos - timer.setNanos);
+                if(timer.convertNanos > 0 || timer.setNanos > 0) {
+                    metrics.timing(CsvMetricsListener.Phase.CONVERT, timer.convertNanos);
+                    metrics.timing(CsvMetricsListener.Phase.SET, timer.setNanos);
                 }
-                delayedQuote = false;
             }
-            val = reader.read();
+            //empty rows and the end of input are not counted
+            if(ret) pendingRows++;
+            if(pendingRows >= REPORT_ROWS || !ret) reportRows();
+        }
+        return ret;
+    }
+
+    private void reportRows() {
+        long position = tokenizer.getPosition();
+        if(pendingRows > 0 || position != reportedPosition) {
+            metrics.rowsRead(pendingRows, position - reportedPosition);
+            pendingRows = 0;
+            reportedPosition = position;
         }
-        if(inQuote) throw new RuntimeException("Unfinished quote");
-        boolean ret = processor.onValue(rowNum, ++colNum, out.toString());
-        return ret && (anyValue || out.length() > 0);
+    }
+
+    private boolean plainReadRow(ColumnProcessor processor) throws IOException {
+        columnAdapter.processor = processor;
+        columnAdapter.charsProcessor = processor instanceof CharsColumnProcessor ? (CharsColumnProcessor) processor : null;
+        try {
+            return tokenizer.readRow(columnAdapter);
+        } finally {
+            columnAdapter.processor = null;
+            columnAdapter.charsProcessor = null;
+            rowNum = tokenizer.getRowNum();
+            colNum = tokenizer.getColNum();
+        }
+    }
+
+    /**
+     * Make projected row as long as the row in input, end of input doesn't move row number and is left empty
+     */
+    private void padProjected(int prevRowNum) {
+        if(projected != null && rowNum != prevRowNum) rowProcessor.padTo(colNum);
     }
 
     public <T extends RowHandler<String[]>> T read(T rowHandler) throws CsvException {
@@ -172,35 +271,73 @@ public class CsvReader implements Closeable {
 
     public String [] readRow() throws CsvException {
         try {
-            ArrayColumnProcessor lcp = new ArrayColumnProcessor();
-            realReadRow(lcp);
-            return lcp.toArray();
+            rowProcessor.data.clear();
+            int prevRowNum = rowNum;
+            realReadRow(rowProcessor);
+            padProjected(prevRowNum);
+            return rowProcessor.toArray();
         } catch (IOException e) {
             throw new CsvException(rowNum, colNum, e);
+        } finally {
+            rowProcessor.data.clear();
         }
     }
 
     public boolean readRow(RowHandler<String[]> rowHandler) {
-        final List<String> res = new ArrayList<>();
         boolean ret;
+        String [] row;
         try {
-            ret = realReadRow(new ColumnProcessor() {
-                @Override
-                public boolean onValue(int rowNum, int colNum, String value) {
-                    res.add(value);
-                    return true;
-                }
-            });
+            rowProcessor.data.clear();
+            int prevRowNum = rowNum;
+            ret = realReadRow(rowProcessor);
+            padProjected(prevRowNum);
+            row = rowProcessor.toArray();
         } catch (IOException e) {
             rowHandler.onError(new CsvException(rowNum, colNum, e));
             return false;
+        } finally {
+            rowProcessor.data.clear();
+        }
+        return ret && rowHandler.onValue(rowNum, row);
+    }
+
+    /**
+     * Move reader so the next row read is rowNum, row numbers reported after it are the same as in sequential reading.
+     * Works only for readers over memory mapped files, see {@link CsvModel#newReader(java.nio.file.Path)}.
+     * @param index row index of the file built with the same model
+     * @param rowNum 1-based row number as reported in {@link CsvException}, header row is counted too
+     */
+    public void seek(CsvRowIndex index, int rowNum) throws CsvException {
+        if(!(tokenizer instanceof CsvByteTokenizer)) throw new UnsupportedOperationException("Only reader over memory mapped file can seek");
+        if(rowNum <= 0) throw new IllegalArgumentException("Row number should be positive: " + rowNum);
+        if(!index.matches(model)) throw new IllegalArgumentException("Row index was built with different csv model");
+        if(metrics != null) reportRows();
+        try {
+            ((CsvByteTokenizer) tokenizer).seek(index, rowNum);
+        } catch (IOException|RuntimeException e) {
+            throw new CsvException(tokenizer.getRowNum(), tokenizer.getColNum(), e);
+        } finally {
+            this.rowNum = tokenizer.getRowNum();
+            this.colNum = 0;
+            //skipped rows are not counted as read
+            reportedPosition = tokenizer.getPosition();
         }
-        return ret && rowHandler.onValue(rowNum, res.toArray(new String[res.size()]));
+    }
+
+    /**
+     * Cursor over remaining rows what doesn't allocate per row.
+     * Cursor shares input with this reader, so they shouldn't be used together.
+     * Current projection is applied, skipped fields are seen as empty.
+     * Rows read by cursor are not reported to metrics.
+     */
+    public CsvCursor cursor() {
+        return new CsvCursor(tokenizer, projected, projectRest);
     }
 
     @Override
     public void close() throws IOException {
-        reader.close();
+        if(metrics != null) reportRows();
+        tokenizer.close();
     }
 
     public CsvModel getModel() {
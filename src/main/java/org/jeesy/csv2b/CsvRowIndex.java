@@ -0,0 +1,262 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Sparse index of row starts in csv file, it keeps byte offset of every Kth row.
+ * Index is built by the tokenizer, so quoted line breaks are never taken as row starts.
+ * Readers over memory mapped files use it to jump close to the row and skip only the rest, see {@link CsvReader#seek(CsvRowIndex, int)}.
+ * Row numbers are the ones tokenizer counts from the file start, the same {@link CsvException} reports.
+ * Index can be saved to a sidecar file and is checked against csv file size and modification time when loaded.
+ * @author Artem Mironov
+ */
+public final class CsvRowIndex {
+    public static final int DEFAULT_INTERVAL = 1024;
+    public static final String SIDECAR_SUFFIX = ".idx";
+    private static final int MAGIC = 0x43535649;
+    private static final int VERSION = 1;
+
+    private final int interval;
+    private final long fileSize;
+    private final long lastModified;
+    private final char separatorChar;
+    private final char quoteChar;
+    private final boolean ignoreEmptyLines;
+    private final int rowCount;
+    //positions[i] is the start of row i * interval + 1
+    private final long [] positions;
+    //tokenizer waited for line feed of CRLF on the entry position
+    private final BitSet wasCR;
+
+    private CsvRowIndex(int interval, long fileSize, long lastModified, char separatorChar, char quoteChar,
+                        boolean ignoreEmptyLines, int rowCount, long [] positions, BitSet wasCR) {
+        this.interval = interval;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.separatorChar = separatorChar;
+        this.quoteChar = quoteChar;
+        this.ignoreEmptyLines = ignoreEmptyLines;
+        this.rowCount = rowCount;
+        this.positions = positions;
+        this.wasCR = wasCR;
+    }
+
+    /**
+     * Scan the file and record start of every interval rows
+     * @param charset UTF-8 or single byte ASCII compatible charset
+     * @throws CsvException on input errors and unfinished quote
+     */
+    public static CsvRowIndex build(Path path, Charset charset, CsvModel model, int interval) throws CsvException {
+        if(interval <= 0) throw new IllegalArgumentException("Index interval should be positive");
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long lastModified = Files.getLastModifiedTime(path).toMillis();
+            CsvByteTokenizer tokenizer = new CsvByteTokenizer(channel, 0, charset, model, CsvByteTokenizer.DEFAULT_WINDOW_SIZE);
+            long [] positions = new long[16];
+            BitSet wasCR = new BitSet();
+            int count = 1;
+            try {
+                while(tokenizer.getPosition() < size) {
+                    tokenizer.readRow(CsvTokenizer.SKIP_FIELDS);
+                    tokenizer.skipPendingLineFeed();
+                    if(tokenizer.getRowNum() % interval == 0 && tokenizer.getPosition() < size) {
+                        if(count == positions.length) positions = Arrays.copyOf(positions, count * 2);
+                        if(tokenizer.isWasCR()) wasCR.set(count);
+                        positions[count++] = tokenizer.getPosition();
+                    }
+                }
+            } catch (RuntimeException e) {
+                throw new CsvException(tokenizer.getRowNum(), tokenizer.getColNum(), e);
+            }
+            return new CsvRowIndex(interval, size, lastModified, model.getSeparatorChar(), model.getQuoteChar(),
+                    model.isIgnoreEmptyLines(), tokenizer.getRowNum(), Arrays.copyOf(positions, count), wasCR);
+        } catch (IOException e) {
+            throw new CsvException(e);
+        }
+    }
+
+    /**
+     * Load index from the sidecar file of csv if it is up to date, otherwise build and save it.
+     * Sidecar what can't be read is treated as stale.
+     */
+    public static CsvRowIndex forFile(Path path, Charset charset, CsvModel model, int interval) throws CsvException {
+        Path sidecar = sidecarPath(path);
+        if(Files.exists(sidecar)) {
+            try {
+                CsvRowIndex index = load(sidecar);
+                if(index.interval == interval && index.matches(model) && index.isUpToDate(path)) return index;
+            } catch (CsvException ignored) {
+                //truncated or corrupted sidecar is rebuilt
+            }
+        }
+        CsvRowIndex index = build(path, charset, model, interval);
+        index.save(sidecar);
+        return index;
+    }
+
+    public static Path sidecarPath(Path path) {
+        return path.resolveSibling(path.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Write index to temp file and move it in place, so readers never see partially written index
+     */
+    public void save(Path path) throws CsvException {
+        Path tmp = null;
+        try {
+            Path dir = path.toAbsolutePath().getParent();
+            tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+            write(tmp);
+            try {
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new CsvException(e);
+        } finally {
+            if(tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void write(Path path) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(interval);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeChar(separatorChar);
+            out.writeChar(quoteChar);
+            out.writeBoolean(ignoreEmptyLines);
+            out.writeInt(rowCount);
+            out.writeInt(positions.length);
+            for(int i = 0; i<positions.length; i++) {
+                out.writeLong(positions[i]);
+                out.writeBoolean(wasCR.get(i));
+            }
+        }
+    }
+
+    public static CsvRowIndex load(Path path) throws CsvException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if(in.readInt() != MAGIC) throw new IOException("Not a row index file " + path);
+            int version = in.readInt();
+            if(version != VERSION) throw new IOException("Unsupported row index version " + version);
+            int interval = in.readInt();
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            char separatorChar = in.readChar();
+            char quoteChar = in.readChar();
+            boolean ignoreEmptyLines = in.readBoolean();
+            int rowCount = in.readInt();
+            int count = in.readInt();
+            if(interval <= 0 || count <= 0 || fileSize < 0 || count - 1L > fileSize) throw new IOException("Corrupted row index file " + path);
+            long [] positions = new long[count];
+            BitSet wasCR = new BitSet();
+            for(int i = 0; i<count; i++) {
+                positions[i] = in.readLong();
+                if(positions[i] < 0 || positions[i] > fileSize) throw new IOException("Corrupted row index file " + path);
+                if(in.readBoolean()) wasCR.set(i);
+            }
+            return new CsvRowIndex(interval, fileSize, lastModified, separatorChar, quoteChar, ignoreEmptyLines, rowCount, positions, wasCR);
+        } catch (IOException e) {
+            throw new CsvException(e);
+        }
+    }
+
+    /**
+     * @return true if file has the same size and modification time it had when index was built
+     */
+    public boolean isUpToDate(Path path) throws CsvException {
+        try {
+            return Files.size(path) == fileSize && Files.getLastModifiedTime(path).toMillis() == lastModified;
+        } catch (IOException e) {
+            throw new CsvException(e);
+        }
+    }
+
+    /**
+     * @return true if model splits rows the same way as the one index was built with
+     */
+    public boolean matches(CsvModel model) {
+        return model.getSeparatorChar() == separatorChar && model.getQuoteChar() == quoteChar
+                && model.isIgnoreEmptyLines() == ignoreEmptyLines;
+    }
+
+    /**
+     * @return index of the last entry starting before the row
+     */
+    int entryBefore(int rowNum) {
+        return (int) Math.min((rowNum - 1L) / interval, positions.length - 1);
+    }
+
+    int entryRowNum(int entry) {
+        return entry * interval;
+    }
+
+    long entryPosition(int entry) {
+        return positions[entry];
+    }
+
+    boolean entryWasCR(int entry) {
+        return wasCR.get(entry);
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return number of rows in the file including header
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return byte offset of the row start if row is in the index, -1 otherwise
+     */
+    public long getPosition(int rowNum) {
+        if(rowNum <= 0 || (rowNum - 1) % interval != 0) return -1;
+        int entry = (rowNum - 1) / interval;
+        return entry < positions.length ? positions[entry] : -1;
+    }
+}
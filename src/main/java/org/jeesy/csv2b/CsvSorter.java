@@ -0,0 +1,370 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import org.jeesy.classinfo.ClassInfo;
+import org.jeesy.classinfo.ClassInfoScanner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External sort of csv rows by key columns.
+ * Rows are read to chunks what fit memory budget, each chunk is sorted in parallel and spilled to temp file as sorted run,
+ * then runs are merged to the output. Input fits the budget is sorted in memory without temp files.
+ * Keys are compared by their types: numbers numerically, strings lexicographically, empty values go first in both directions.
+ * Sort is stable, rows with equal keys keep input order. Header, if input has it, is written first.
+ * @author Artem Mironov
+ */
+public class CsvSorter {
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+    //max number of runs merged at once, more runs are merged in several passes
+    static final int MAX_MERGE_WIDTH = 64;
+
+    private final CsvModel model;
+    private final List<String> keyNames = new ArrayList<>();
+    private final List<Integer> keyColNums = new ArrayList<>();
+    private final List<CsvColumnarReader.Type> keyTypes = new ArrayList<>();
+    private final List<Boolean> keyDescending = new ArrayList<>();
+    private boolean header = true;
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private Path tempDirectory;
+    private boolean parallel = true;
+
+    public CsvSorter(CsvModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Sort by column ascending
+     * @param name column name in header
+     */
+    public void addKey(String name, CsvColumnarReader.Type type) {
+        addKey(name, type, false);
+    }
+
+    public void addKey(String name, CsvColumnarReader.Type type, boolean descending) {
+        keyNames.add(name);
+        keyColNums.add(0);
+        keyTypes.add(type);
+        keyDescending.add(descending);
+    }
+
+    /**
+     * Sort by column what is found by number, for input without header
+     * @param colNum 1-based column number
+     */
+    public void addKey(int colNum, CsvColumnarReader.Type type, boolean descending) {
+        if(colNum <= 0) throw new IllegalArgumentException("Column number should be positive: " + colNum);
+        keyNames.add(null);
+        keyColNums.add(colNum);
+        keyTypes.add(type);
+        keyDescending.add(descending);
+    }
+
+    /**
+     * Sort ascending by columns mapped to bean properties by {@link CsvIndex}, types are taken from properties
+     * @param properties dot separated property paths
+     */
+    public void addKeys(Class<?> beanType, String... properties) {
+        ClassInfo<?> classInfo = ClassInfoScanner.classInfo(beanType);
+        CsvIndex index = classInfo.getIndex(CsvIndex.class);
+        for(String path : properties) {
+            String name = index.getColumnNameByPath(path);
+            if(name == null) throw new IllegalArgumentException("Property " + path + " is not mapped in " + beanType);
+            addKey(name, CsvColumnarReader.typeOf(CsvBindingPlan.propertyInfo(classInfo, path).getType()));
+        }
+    }
+
+    /**
+     * Whether the first row is header, true by default
+     */
+    public void setHeader(boolean header) {
+        this.header = header;
+    }
+
+    /**
+     * Approximate heap size rows of single chunk may take
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if(memoryBudget <= 0) throw new IllegalArgumentException("Memory budget should be positive");
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Directory for sorted runs, default temp directory if not set
+     */
+    public void setTempDirectory(Path tempDirectory) {
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * Sort chunks on common fork-join pool, true by default
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Row with parsed keys, row number keeps sort stable across runs
+     */
+    private static final class Row {
+        final String [] fields;
+        final Object [] keys;
+        final int rowNum;
+
+        Row(String [] fields, Object [] keys, int rowNum) {
+            this.fields = fields;
+            this.keys = keys;
+            this.rowNum = rowNum;
+        }
+    }
+
+    private final class RowComparator implements Comparator<Row> {
+        private final boolean [] descending;
+
+        RowComparator() {
+            descending = new boolean[keyDescending.size()];
+            for(int i = 0; i<descending.length; i++) descending[i] = keyDescending.get(i);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(Row a, Row b) {
+            for(int i = 0; i<descending.length; i++) {
+                Object x = a.keys[i];
+                Object y = b.keys[i];
+                if(x == null || y == null) {
+                    if(x != y) return x == null ? -1 : 1;
+                    continue;
+                }
+                int c = ((Comparable<Object>) x).compareTo(y);
+                if(c != 0) return descending[i] ? -c : c;
+            }
+            return Integer.compare(a.rowNum, b.rowNum);
+        }
+    }
+
+    /**
+     * Parse key values of the row
+     */
+    private Row row(String [] fields, int [] keyCols, CsvColumnarReader.Type [] types, int rowNum) throws CsvException {
+        Object [] keys = new Object[keyCols.length];
+        for(int i = 0; i<keyCols.length; i++) {
+            int col = keyCols[i];
+            String value = col <= fields.length ? fields[col - 1] : null;
+            if(value == null || value.isEmpty()) continue;
+            try {
+                switch (types[i]) {
+                    case INT:
+                    case LONG:
+                        keys[i] = CsvNumbers.parseLong(value, 0, value.length());
+                        break;
+                    case DOUBLE:
+                        keys[i] = CsvNumbers.parseDouble(value, 0, value.length());
+                        break;
+                    default:
+                        keys[i] = value;
+                }
+            } catch (NumberFormatException e) {
+                throw new CsvException(rowNum, col, e);
+            }
+        }
+        return new Row(fields, keys, rowNum);
+    }
+
+    private static long sizeOf(String [] fields) {
+        long size = 64 + 8L * fields.length;
+        for(String f : fields) size += 48 + 2L * f.length();
+        return size;
+    }
+
+    /**
+     * Sort UTF-8 file
+     * @return number of sorted rows, header is not counted
+     */
+    public long sort(Path in, Path out) throws CsvException {
+        try(CsvReader reader = model.newReader(in);
+            Writer writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            return sort(reader, writer);
+        } catch (IOException e) {
+            throw new CsvException(e);
+        }
+    }
+
+    /**
+     * Sort rows of reader and write them to writer, writer is flushed but not closed
+     * @return number of sorted rows, header is not counted
+     */
+    public long sort(Reader in, Writer out) throws CsvException {
+        try(CsvReader reader = model.newReader(in)) {
+            return sort(reader, out);
+        } catch (IOException e) {
+            throw new CsvException(e);
+        }
+    }
+
+    private long sort(CsvReader reader, Writer out) throws CsvException, IOException {
+        if(keyTypes.isEmpty()) throw new IllegalStateException("No sort keys");
+        String [] head = header ? reader.readRow() : null;
+        if(head != null && head.length == 0) return 0;
+        int [] keyCols = new int[keyTypes.size()];
+        for(int i = 0; i<keyCols.length; i++) {
+            String name = keyNames.get(i);
+            if(name == null) {
+                keyCols[i] = keyColNums.get(i);
+            } else {
+                int idx = head == null ? -1 : Arrays.asList(head).indexOf(name);
+                if(idx < 0) throw new IllegalArgumentException("Key column is not in header: " + name);
+                keyCols[i] = idx + 1;
+            }
+        }
+        CsvColumnarReader.Type [] types = keyTypes.toArray(new CsvColumnarReader.Type[keyCols.length]);
+        RowComparator comparator = new RowComparator();
+        List<Path> runs = new ArrayList<>();
+        try {
+            List<Row> chunk = new ArrayList<>();
+            long chunkSize = 0;
+            long count = 0;
+            CsvSpill.LastRow last = new CsvSpill.LastRow();
+            while(reader.readRow(last)) {
+                chunk.add(row(last.fields, keyCols, types, last.rowNum));
+                count++;
+                chunkSize += sizeOf(last.fields);
+                if(chunkSize >= memoryBudget) {
+                    runs.add(spill(sorted(chunk, comparator)));
+                    chunk.clear();
+                    chunkSize = 0;
+                }
+            }
+            CsvWriter writer = new CsvWriter(out, model);
+            if(head != null) writer.write(head);
+            if(runs.isEmpty()) {
+                for(Row row : sorted(chunk, comparator)) writer.write(row.fields);
+            } else {
+                if(!chunk.isEmpty()) runs.add(spill(sorted(chunk, comparator)));
+                chunk = null;
+                while(runs.size() > MAX_MERGE_WIDTH) {
+                    List<Path> merged = new ArrayList<>();
+                    try {
+                        for(int i = 0; i<runs.size(); i += MAX_MERGE_WIDTH) {
+                            List<Path> group = runs.subList(i, Math.min(runs.size(), i + MAX_MERGE_WIDTH));
+                            Path run = CsvSpill.newFile(tempDirectory, "csv2b-sort");
+                            merged.add(run);
+                            try(CsvWriter runWriter = CsvSpill.newWriter(run)) {
+                                merge(group, keyCols, types, comparator, runWriter, true);
+                            }
+                            for(Path p : group) Files.deleteIfExists(p);
+                        }
+                    } catch (IOException|RuntimeException e) {
+                        for(Path p : merged) Files.deleteIfExists(p);
+                        throw e;
+                    }
+                    runs = merged;
+                }
+                merge(runs, keyCols, types, comparator, writer, false);
+            }
+            writer.flush();
+            return count;
+        } finally {
+            for(Path run : runs) Files.deleteIfExists(run);
+        }
+    }
+
+    private Row [] sorted(List<Row> chunk, RowComparator comparator) {
+        Row [] rows = chunk.toArray(new Row[chunk.size()]);
+        if(parallel) Arrays.parallelSort(rows, comparator);
+        else Arrays.sort(rows, comparator);
+        return rows;
+    }
+
+    /**
+     * Write sorted run to temp file
+     */
+    private Path spill(Row [] rows) throws IOException {
+        Path run = CsvSpill.newFile(tempDirectory, "csv2b-sort");
+        try(CsvWriter writer = CsvSpill.newWriter(run)) {
+            for(Row row : rows) CsvSpill.writeRow(writer, row.rowNum, row.fields);
+        } catch (IOException|RuntimeException e) {
+            Files.deleteIfExists(run);
+            throw e;
+        }
+        return run;
+    }
+
+    /**
+     * Sorted run being merged with its current row
+     */
+    private final class RunCursor implements Closeable {
+        final CsvReader reader;
+        final CsvSpill.LastRow last = new CsvSpill.LastRow();
+        Row row;
+
+        RunCursor(Path run) throws CsvException {
+            reader = CsvSpill.newReader(run);
+        }
+
+        boolean next(int [] keyCols, CsvColumnarReader.Type [] types) throws CsvException {
+            if(!CsvSpill.readRow(reader, last)) {
+                row = null;
+                return false;
+            }
+            row = row(last.fields, keyCols, types, last.rowNum);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private void merge(List<Path> runs, int [] keyCols, CsvColumnarReader.Type [] types, final RowComparator comparator,
+                       CsvWriter writer, boolean toRun) throws IOException {
+        PriorityQueue<RunCursor> queue = new PriorityQueue<>(runs.size(), new Comparator<RunCursor>() {
+            @Override
+            public int compare(RunCursor a, RunCursor b) {
+                return comparator.compare(a.row, b.row);
+            }
+        });
+        List<RunCursor> cursors = new ArrayList<>();
+        try {
+            for(Path run : runs) {
+                RunCursor cursor = new RunCursor(run);
+                cursors.add(cursor);
+                if(cursor.next(keyCols, types)) queue.add(cursor);
+            }
+            while(!queue.isEmpty()) {
+                RunCursor cursor = queue.poll();
+                if(toRun) CsvSpill.writeRow(writer, cursor.row.rowNum, cursor.row.fields);
+                else writer.write(cursor.row.fields);
+                if(cursor.next(keyCols, types)) queue.add(cursor);
+            }
+        } finally {
+            for(RunCursor cursor : cursors) CsvModel.closeQuietly(cursor);
+        }
+    }
+}
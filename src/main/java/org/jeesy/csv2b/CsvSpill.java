@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Temp files of rows spilled by {@link CsvSorter} and {@link CsvJoin}.
+ * Each spilled row starts with its input row number, so row numbers survive the spill
+ * and rows of single empty field are not lost as empty lines.
+ * Files are written and read with own ASCII model without metrics, whatever model the caller uses.
+ * @author Artem Mironov
+ */
+final class CsvSpill {
+    private static final CsvModel MODEL = new CsvModel(',', '"', "\n", true, '#', CsvModel.STANDARD.getConverter());
+
+    private CsvSpill() {
+    }
+
+    /**
+     * Keeps the row just read, stops on the first error
+     */
+    static final class LastRow implements CsvReader.RowHandler<String[]> {
+        String [] fields;
+        int rowNum;
+
+        @Override
+        public boolean onError(CsvException e) {
+            throw e;
+        }
+
+        @Override
+        public boolean onValue(int rowNum, String[] value) {
+            this.fields = value;
+            this.rowNum = rowNum;
+            return true;
+        }
+    }
+
+    /**
+     * @param directory directory of the file, default temp directory if null
+     */
+    static Path newFile(Path directory, String prefix) throws IOException {
+        return directory == null ? Files.createTempFile(prefix, ".csv") : Files.createTempFile(directory, prefix, ".csv");
+    }
+
+    static CsvWriter newWriter(Path file) throws IOException {
+        return new CsvWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), MODEL);
+    }
+
+    static CsvReader newReader(Path file) throws CsvException {
+        return MODEL.newReader(file);
+    }
+
+    static void writeRow(CsvWriter writer, int rowNum, String [] fields) throws CsvException {
+        writer.startRow();
+        writer.writeValue(rowNum);
+        for(String f : fields) writer.writeValue(f);
+        writer.endRow();
+    }
+
+    /**
+     * Read spilled row to last with its original row number
+     * @return false at the end of file
+     */
+    static boolean readRow(CsvReader reader, LastRow last) throws CsvException {
+        if(!reader.readRow(last)) return false;
+        String [] fields = last.fields;
+        last.rowNum = Integer.parseInt(fields[0]);
+        last.fields = Arrays.copyOfRange(fields, 1, fields.length);
+        return true;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Columns read by {@link CsvColumnarReader}.
+ * Numbers are kept in primitive arrays and strings are dictionary encoded,
+ * empty csv values are nulls.
+ * @author Artem Mironov
+ */
+public final class CsvTable {
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private final int rowCount;
+
+    CsvTable(Column [] columns, int rowCount) {
+        for(Column c : columns) this.columns.put(c.getName(), c);
+        this.rowCount = rowCount;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public String [] getColumnNames() {
+        return columns.keySet().toArray(new String[columns.size()]);
+    }
+
+    /**
+     * @throws IllegalArgumentException if there is no such column
+     */
+    public Column getColumn(String name) {
+        Column c = columns.get(name);
+        if(c == null) throw new IllegalArgumentException("Column not found " + name);
+        return c;
+    }
+
+    public IntColumn getIntColumn(String name) {
+        return typed(name, IntColumn.class);
+    }
+
+    public LongColumn getLongColumn(String name) {
+        return typed(name, LongColumn.class);
+    }
+
+    public DoubleColumn getDoubleColumn(String name) {
+        return typed(name, DoubleColumn.class);
+    }
+
+    public StringColumn getStringColumn(String name) {
+        return typed(name, StringColumn.class);
+    }
+
+    private <C extends Column> C typed(String name, Class<C> type) {
+        Column c = getColumn(name);
+        if(!type.isInstance(c)) throw new IllegalArgumentException("Column " + name + " is " + c.getClass().getSimpleName());
+        return type.cast(c);
+    }
+
+    /**
+     * Column values, arrays grow by doubling while reading
+     */
+    public abstract static class Column {
+        private final String name;
+        int size = 0;
+        private BitSet nulls;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isNull(int row) {
+            return nulls != null && nulls.get(row);
+        }
+
+        /**
+         * Type of the values for error reporting
+         */
+        abstract Class<?> valueType();
+
+        /**
+         * @throws NumberFormatException if value cannot be parsed
+         */
+        abstract void append(CharSequence value);
+
+        abstract void appendDefault();
+
+        void appendNull() {
+            if(nulls == null) nulls = new BitSet();
+            nulls.set(size);
+            appendDefault();
+        }
+
+        /**
+         * Drop values after specified row count
+         */
+        void truncate(int size) {
+            if(nulls != null) nulls.clear(size, Math.max(size, this.size));
+            this.size = size;
+        }
+
+        static int grow(int length) {
+            int n = length * 2;
+            if(n < 0) throw new OutOfMemoryError("Column is too large");
+            return n;
+        }
+
+        void check(int row) {
+            if(row < 0 || row >= size) throw new IndexOutOfBoundsException("Row: " + row);
+        }
+    }
+
+    public static final class IntColumn extends Column {
+        private int [] values = new int[16];
+
+        IntColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        Class<?> valueType() {
+            return int.class;
+        }
+
+        @Override
+        void append(CharSequence value) {
+            int v = CsvNumbers.parseInt(value, 0, value.length());
+            if(size == values.length) values = Arrays.copyOf(values, grow(values.length));
+            values[size++] = v;
+        }
+
+        @Override
+        void appendDefault() {
+            if(size == values.length) values = Arrays.copyOf(values, grow(values.length));
+            values[size++] = 0;
+        }
+
+        /**
+         * @return value or 0 for null
+         */
+        public int get(int row) {
+            check(row);
+            return values[row];
+        }
+
+        public int [] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    public static final class LongColumn extends Column {
+        private long [] values = new long[16];
+
+        LongColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        Class<?> valueType() {
+            return long.class;
+        }
+
+        @Override
+        void append(CharSequence value) {
+            long v = CsvNumbers.parseLong(value, 0, value.length());
+            if(size == values.length) values = Arrays.copyOf(values, grow(values.length));
+            values[size++] = v;
+        }
+
+        @Override
+        void appendDefault() {
+            if(size == values.length) values = Arrays.copyOf(values, grow(values.length));
+            values[size++] = 0;
+        }
+
+        /**
+         * @return value or 0 for null
+         */
+        public long get(int row) {
+            check(row);
+            return values[row];
+        }
+
+        public long [] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    public static final class DoubleColumn extends Column {
+        private double [] values = new double[16];
+
+        DoubleColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        Class<?> valueType() {
+            return double.class;
+        }
+
+        @Override
+        void append(CharSequence value) {
+            double v = CsvNumbers.parseDouble(value, 0, value.length());
+            if(size == values.length) values = Arrays.copyOf(values, grow(values.length));
+            values[size++] = v;
+        }
+
+        @Override
+        void appendDefault() {
+            if(size == values.length) values = Arrays.copyOf(values, grow(values.length));
+            values[size++] = Double.NaN;
+        }
+
+        /**
+         * @return value or NaN for null
+         */
+        public double get(int row) {
+            check(row);
+            return values[row];
+        }
+
+        public double [] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Strings encoded as codes of distinct values, each distinct value is stored once.
+     * Lookup of the dictionary code is done on field chars, so string is created only for new values.
+     */
+    public static final class StringColumn extends Column {
+        private static final int NULL_CODE = -1;
+        private int [] codes = new int[16];
+        private String [] dictionary = new String[16];
+        private int dictionarySize = 0;
+        //open addressing table of code + 1, 0 for empty slot
+        private int [] table = new int[32];
+
+        StringColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        Class<?> valueType() {
+            return String.class;
+        }
+
+        @Override
+        void append(CharSequence value) {
+            int code = encode(value);
+            if(size == codes.length) codes = Arrays.copyOf(codes, grow(codes.length));
+            codes[size++] = code;
+        }
+
+        @Override
+        void appendDefault() {
+            if(size == codes.length) codes = Arrays.copyOf(codes, grow(codes.length));
+            codes[size++] = NULL_CODE;
+        }
+
+        private int encode(CharSequence value) {
+            int mask = table.length - 1;
+            int i = CsvValueCache.hash(value) & mask;
+            for(;;) {
+                int slot = table[i];
+                if(slot == 0) break;
+                if(dictionary[slot - 1].contentEquals(value)) return slot - 1;
+                i = (i + 1) & mask;
+            }
+            int code = dictionarySize++;
+            if(code == dictionary.length) dictionary = Arrays.copyOf(dictionary, grow(dictionary.length));
+            dictionary[code] = value.toString();
+            table[i] = code + 1;
+            if(dictionarySize * 2 > table.length) rehash();
+            return code;
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for(int code = 0; code<dictionarySize; code++) {
+                int i = CsvValueCache.hash(dictionary[code]) & mask;
+                while(table[i] != 0) i = (i + 1) & mask;
+                table[i] = code + 1;
+            }
+        }
+
+        public String get(int row) {
+            check(row);
+            int code = codes[row];
+            return code == NULL_CODE ? null : dictionary[code];
+        }
+
+        /**
+         * @return dictionary code of the value or -1 for null
+         */
+        public int getCode(int row) {
+            check(row);
+            return codes[row];
+        }
+
+        public int [] getCodes() {
+            return Arrays.copyOf(codes, size);
+        }
+
+        /**
+         * @return distinct values in order of first occurrence
+         */
+        public String [] getDictionary() {
+            return Arrays.copyOf(dictionary, dictionarySize);
+        }
+    }
+}
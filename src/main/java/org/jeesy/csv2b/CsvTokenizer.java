@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Splits csv input to rows and fields.
+ * Row and column numbers are counted the same way for all implementations
+ * and reported by {@link CsvReader} as is.
+ * @author Artem Mironov
+ */
+public abstract class CsvTokenizer implements Closeable {
+    protected final char separatorChar;
+    protected final char quoteChar;
+    protected final boolean ignoreEmptyLines;
+
+    protected int rowNum = 0;
+    protected int colNum = 0;
+    protected boolean wasCR = false;
+
+    protected CsvTokenizer(CsvModel model) {
+        this.separatorChar = model.getSeparatorChar();
+        this.quoteChar = model.getQuoteChar();
+        this.ignoreEmptyLines = model.isIgnoreEmptyLines();
+    }
+
+    public interface FieldHandler {
+        /**
+         * Accept single field
+         * @param value field content, valid only till this method returns
+         * @return false to stop reading current row
+         */
+        boolean onField(int rowNum, int colNum, CharSequence value);
+    }
+
+    /**
+     * Handler what only moves tokenizer over rows
+     */
+    static final FieldHandler SKIP_FIELDS = new FieldHandler() {
+        @Override
+        public boolean onField(int rowNum, int colNum, CharSequence value) {
+            return true;
+        }
+    };
+
+    /**
+     * Field value what can be copied to char array without per char calls
+     */
+    interface Slice extends CharSequence {
+        void getChars(char [] dst, int dstBegin);
+    }
+
+    /**
+     * Read next row passing each field to handler
+     * @param handler field handler
+     * @return true if any value reported and handler accepted all fields
+     * @throws IOException on underlying input errors
+     */
+    public abstract boolean readRow(FieldHandler handler) throws IOException;
+
+    /**
+     * @return absolute input position of the next char or byte to be read
+     */
+    public abstract long getPosition();
+
+    /**
+     * Continue counting from the state tokenizer had on the row boundary it starts at
+     */
+    void resume(int rowNum, boolean wasCR) {
+        this.rowNum = rowNum;
+        this.wasCR = wasCR;
+    }
+
+    boolean isWasCR() {
+        return wasCR;
+    }
+
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    public int getColNum() {
+        return colNum;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+/**
+ * Bounded cache of canonical column values looked up by field chars.
+ * Each value hashes to a pair of slots, new value is put to the first slot and moves
+ * previous one to the second, so the least recently added value of the pair is evicted.
+ * Entries are immutable, so cache can be shared by threads without locking,
+ * concurrent puts may only lose some entries.
+ * @author Artem Mironov
+ */
+final class CsvValueCache {
+    static final class Entry {
+        final int hash;
+        final String key;
+        //converted value, or the key itself for strings
+        final Object value;
+
+        Entry(int hash, String key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private final Entry [] table;
+    private final int mask;
+
+    /**
+     * @param size max number of cached values
+     */
+    CsvValueCache(int size) {
+        if(size <= 0) throw new IllegalArgumentException("Cache size should be positive");
+        int n = 2;
+        while(n < size && n < (1 << 30)) n <<= 1;
+        table = new Entry[n];
+        mask = n - 2;
+    }
+
+    static int hash(CharSequence cs) {
+        int h = 0;
+        for(int i = 0, n = cs.length(); i<n; i++) h = 31 * h + cs.charAt(i);
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(Entry e, int hash, CharSequence chars) {
+        return e != null && e.hash == hash && e.key.contentEquals(chars);
+    }
+
+    /**
+     * @return cached entry for the chars or null
+     */
+    Entry get(CharSequence chars) {
+        int h = hash(chars);
+        int i = h & mask;
+        Entry e = table[i];
+        if(matches(e, h, chars)) return e;
+        e = table[i + 1];
+        return matches(e, h, chars) ? e : null;
+    }
+
+    /**
+     * Put value evicting older entry of the same slot pair
+     * @return new entry
+     */
+    Entry put(String key, Object value) {
+        int h = hash(key);
+        int i = h & mask;
+        Entry e = new Entry(h, key, value);
+        Entry first = table[i];
+        if(first != null) table[i + 1] = first;
+        table[i] = e;
+        return e;
+    }
+
+    int capacity() {
+        return table.length;
+    }
+}
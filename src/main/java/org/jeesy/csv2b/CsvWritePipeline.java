@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Artem Mironov
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jeesy.csv2b;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Render batches of beans to csv text on executor and pass the text to the writer in the original order.
+ * Each batch is rendered by own {@link CsvBeanWriter} into own char buffer starting from the row number
+ * it will have in the output, so errors report the same row numbers as sequential writing.
+ * Number of batches in flight is limited to keep memory bounded.
+ * @author Artem Mironov
+ */
+final class CsvWritePipeline<T> {
+    //expected chars per row, writers of batches start with buffers of this size per bean and grow for longer rows
+    static final int ROW_SIZE_HINT = 128;
+
+    private final CsvBeanWriter<T> writer;
+    private final Class<T> beanType;
+    private final Executor executor;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final int bufferSize;
+    private volatile boolean stopped = false;
+
+    CsvWritePipeline(CsvBeanWriter<T> writer, Class<T> beanType, Executor executor, int batchSize, int maxInFlight) {
+        this.writer = writer;
+        this.beanType = beanType;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.bufferSize = (int) Math.min(CsvWriter.DEFAULT_BUFFER_SIZE, (long) batchSize * ROW_SIZE_HINT);
+    }
+
+    /**
+     * Beans of single batch and text rendered from them
+     */
+    private final class Batch implements Runnable {
+        private final Object [] beans = new Object[batchSize];
+        private int count = 0;
+        private final int firstRowNum;
+        private final CharArrayWriter out = new CharArrayWriter(bufferSize);
+        //rows rendered before failure
+        private int rendered = 0;
+        private RuntimeException failure;
+        private BlockingQueue<Batch> completed;
+        private volatile boolean done = false;
+
+        Batch(int firstRowNum) {
+            this.firstRowNum = firstRowNum;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            try {
+                if(stopped) return;
+                CsvBeanWriter<T> rowWriter = new CsvBeanWriter<>(beanType, out, writer.model, bufferSize);
+                rowWriter.rowNum = firstRowNum;
+                try {
+                    for(; rendered<count && !stopped; rendered++) {
+                        rowWriter.writeBean((T) beans[rendered]);
+                        beans[rendered] = null;
+                    }
+                } finally {
+                    rowWriter.close();
+                }
+            } catch (RuntimeException e) {
+                //batches before this one still have to be rendered, so only writing thread stops others
+                failure = e;
+            } catch (IOException e) {
+                //char array writer doesn't throw
+                failure = new CsvException(firstRowNum + rendered, 0, e);
+            } catch (Throwable e) {
+                //errors of serializers and getters are rethrown on writing thread too, rows after them are not written
+                failure = new CsvException(firstRowNum + rendered, 0, new ExecutionException(e));
+            } finally {
+                done = true;
+                if(completed != null) completed.add(this);
+            }
+        }
+    }
+
+    private void submit(Batch batch, BlockingQueue<Batch> completed) {
+        batch.completed = completed;
+        try {
+            executor.execute(batch);
+        } catch (RejectedExecutionException e) {
+            //render on the calling thread
+            batch.run();
+        }
+    }
+
+    void writeBeans(Iterator<? extends T> beans) throws CsvException {
+        BlockingQueue<Batch> completed = new LinkedBlockingQueue<>();
+        Deque<Batch> inFlight = new ArrayDeque<>();
+        int nextRowNum = writer.rowNum;
+        try {
+            for(;;) {
+                while(beans.hasNext() && inFlight.size() < maxInFlight) {
+                    Batch batch = new Batch(nextRowNum);
+                    while(batch.count < batchSize && beans.hasNext()) batch.beans[batch.count++] = beans.next();
+                    nextRowNum += batch.count;
+                    inFlight.add(batch);
+                    submit(batch, completed);
+                }
+                if(inFlight.isEmpty()) break;
+                Batch next = inFlight.peek();
+                while(!next.done) completed.take();
+                inFlight.poll();
+                writer.writeRendered(next.out, next.rendered);
+                if(next.failure != null) throw next.failure;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CsvException(e);
+        } finally {
+            stopped = true;
+        }
+    }
+}
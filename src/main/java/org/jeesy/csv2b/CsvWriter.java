@@ -15,46 +15,241 @@
  */
 package org.jeesy.csv2b;
 
+import java.io.CharArrayWriter;
 import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * Plain csv writer
+ * Plain csv writer.
+ * Rows are escaped into internal buffer what is passed to underlying writer by large blocks,
+ * so {@link #flush()} or {@link #close()} should be called to get all rows written.
  * @author Artem Mironov
  */
 public class CsvWriter implements Closeable, Flushable{
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
     protected CsvModel model;
     protected Writer writer;
     protected int rowNum = 1;
     protected int colNum = 1;
     private boolean alwaysEscape = false;
+    private char [] buf;
+    private int len = 0;
+    //chars passed to underlying writer
+    private long flushed = 0;
+    //buffer position current row starts at, -1 outside of row
+    private int rowStart = -1;
+    protected final CsvMetricsListener metrics;
+    //rows finished since buffer was last passed to metrics
+    private int pendingRows = 0;
+    private int sampleCounter = 0;
+    private long sampleStart = 0;
 
     public CsvWriter(Writer writer, CsvModel model) {
+        this(writer, model, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CsvWriter(Writer writer, CsvModel model, int bufferSize) {
+        if(bufferSize <= 0) throw new IllegalArgumentException("Buffer size should be positive");
         this.writer = writer;
         this.model = model;
+        this.buf = new char[bufferSize];
+        this.metrics = model.getMetrics();
     }
 
-    private static boolean containsAny(String val, char ... chars) {
-        for(int i = 0; i<val.length(); i++) {
-            for(char c : chars) {
-                if(val.charAt(i) == c) return true;
+    private void flushBuffer() throws IOException {
+        writeOut(len);
+        //row in progress can't be dropped after explicit flush
+        rowStart = -1;
+    }
+
+    /**
+     * Pass first n buffer chars to underlying writer, they should contain finished rows only
+     */
+    private void writeOut(int n) throws IOException {
+        if(n > 0) {
+            writer.write(buf, 0, n);
+            flushed += n;
+            if(metrics != null) {
+                metrics.rowsWritten(pendingRows, n);
+                pendingRows = 0;
             }
+            System.arraycopy(buf, n, buf, 0, len - n);
+            len -= n;
+        }
+    }
+
+    /**
+     * Free buffer space. Row in progress is never passed to underlying writer, so {@link #discardRow()} can always
+     * drop it: rows before it are written out and buffer grows if the row alone fills it.
+     * @param needed number of chars to make room for
+     */
+    private void makeRoom(int needed) throws IOException {
+        if(rowStart < 0) {
+            flushBuffer();
+        } else if(rowStart > 0) {
+            writeOut(rowStart);
+            rowStart = 0;
         }
-        return false;
+        if(buf.length - len < needed) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + needed));
+    }
+
+    private void put(char c) throws IOException {
+        if(len == buf.length) makeRoom(1);
+        buf[len++] = c;
     }
 
-    private void checkEscapeAndWriteCol(String val) throws IOException {
-        if (alwaysEscape || containsAny(val, model.getQuoteChar(), model.getSeparatorChar(), '\n', '\r'))
-            escapeAndWriteCol(val);
-        else writer.write(val);
+    private void put(String val, int from, int to) throws IOException {
+        while(from < to) {
+            if(len == buf.length) makeRoom(1);
+            int n = Math.min(to - from, buf.length - len);
+            val.getChars(from, from + n, buf, len);
+            len += n;
+            from += n;
+        }
     }
 
-    private void escapeAndWriteCol(String val) throws IOException {
-        writer.append(model.getQuoteChar());
-        writer.append(val.replace("\"", "\"\""));
-        writer.append(model.getQuoteChar());
+    /**
+     * Write column value escaping it only if it contains special chars.
+     * Value is scanned once: plain prefix is checked while searching for special char
+     * and escaping starts from the position it was found at.
+     */
+    private void writeCol(String val, char quote, char separator) throws IOException {
+        if(val == null) return;
+        int length = val.length();
+        int i = 0;
+        if(!alwaysEscape) {
+            for(; i<length; i++) {
+                char c = val.charAt(i);
+                if(c == quote || c == separator || c == '\n' || c == '\r') break;
+            }
+            if(i == length) {
+                put(val, 0, length);
+                return;
+            }
+        }
+        //no quotes before i
+        put(quote);
+        int from = 0;
+        for(; i<length; i++) {
+            if(val.charAt(i) == quote) {
+                put(val, from, i + 1);
+                put(quote);
+                from = i + 1;
+            }
+        }
+        put(val, from, length);
+        put(quote);
+    }
+
+    /**
+     * Format long value straight into the buffer
+     */
+    private void putLong(long val) throws IOException {
+        if(len + 20 > buf.length) makeRoom(20);
+        if(val == Long.MIN_VALUE) {
+            String str = Long.toString(val);
+            put(str, 0, str.length());
+            return;
+        }
+        if(val < 0) {
+            buf[len++] = '-';
+            val = -val;
+        }
+        int digits = 1;
+        for(long v = val / 10; v != 0; v /= 10) digits++;
+        int p = len += digits;
+        do {
+            buf[--p] = (char) ('0' + val % 10);
+            val /= 10;
+        } while(val != 0);
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '-';
+    }
+
+    /**
+     * Start new row, column values are written by writeValue methods and row is finished by {@link #endRow()}
+     */
+    protected void startRow() {
+        colNum = 1;
+        rowStart = len;
+        if(metrics != null && ++sampleCounter % CsvMetricsListener.SAMPLE_INTERVAL == 0) sampleStart = System.nanoTime();
+    }
+
+    /**
+     * Drop the values of current row, row is kept in buffer till {@link #endRow()} unless writer was flushed explicitly
+     * @return true if row was dropped
+     */
+    protected boolean discardRow() {
+        colNum = 1;
+        sampleStart = 0;
+        if(rowStart < 0) return false;
+        len = rowStart;
+        rowStart = -1;
+        return true;
+    }
+
+    protected void writeValue(String val) throws CsvException {
+        final char separator = model.getSeparatorChar();
+        try {
+            if(colNum != 1) put(separator);
+            writeCol(val, model.getQuoteChar(), separator);
+            colNum++;
+        } catch (IOException e) {
+            throw new CsvException(rowNum, colNum, e);
+        }
+    }
+
+    protected void writeValue(int val) throws CsvException {
+        writeValue((long) val);
+    }
+
+    protected void writeValue(long val) throws CsvException {
+        final char separator = model.getSeparatorChar();
+        if(isNumberChar(separator) || isNumberChar(model.getQuoteChar())) {
+            writeValue(Long.toString(val));
+            return;
+        }
+        try {
+            if(colNum != 1) put(separator);
+            putLong(val);
+            colNum++;
+        } catch (IOException e) {
+            throw new CsvException(rowNum, colNum, e);
+        }
+    }
+
+    protected void writeValue(double val) throws CsvException {
+        writeValue(Double.toString(val));
+    }
+
+    protected void writeValue(boolean val) throws CsvException {
+        writeValue(val ? "true" : "false");
+    }
+
+    protected void endRow() throws CsvException {
+        try {
+            String eol = model.getEndOfLine();
+            put(eol, 0, eol.length());
+        } catch (IOException e) {
+            throw new CsvException(rowNum, colNum, e);
+        }
+        rowStart = -1;
+        rowNum++;
+        colNum = 1;
+        if(metrics != null) {
+            pendingRows++;
+            if(sampleStart != 0) {
+                metrics.timing(CsvMetricsListener.Phase.WRITE, System.nanoTime() - sampleStart);
+                sampleStart = 0;
+            }
+        }
     }
 
     /**
@@ -62,28 +257,52 @@ public class CsvWriter implements Closeable, Flushable{
      * @param row arrays with unescaped column values
      */
     public void write(String [] row) throws CsvException {
-        colNum = 1;
+        startRow();
         for(String col : row) {
-            try {
-                if(colNum != 1) writer.append(model.getSeparatorChar());
-                checkEscapeAndWriteCol(col);
-                colNum++;
-            } catch (IOException e) {
-                throw new CsvException(rowNum, colNum, e);
-            }
+            writeValue(col);
         }
+        endRow();
+    }
+
+    /**
+     * Pass rows rendered by other writer to the output after the rows written before
+     * @param text escaped rows
+     * @param rows number of rows in text
+     */
+    void writeRendered(CharArrayWriter text, int rows) throws CsvException {
         try {
-            writer.append(model.getEndOfLine());
+            flushBuffer();
+            text.writeTo(writer);
+            flushed += text.size();
         } catch (IOException e) {
             throw new CsvException(rowNum, colNum, e);
         }
+        rowNum += rows;
+    }
+
+    /**
+     * @return number of chars written including the ones still in buffer
+     */
+    long getWrittenChars() {
+        return flushed + len;
+    }
+
+    /**
+     * Write batch of rows
+     * @param rows arrays with unescaped column values
+     */
+    public void write(List<String[]> rows) throws CsvException {
+        for(String [] row : rows) {
+            write(row);
+        }
     }
 
     public void writeComment(String comment) throws CsvException {
         try {
-            writer.write(model.getCommentChar());
-            writer.write(comment);
-            writer.write(model.getEndOfLine());
+            put(model.getCommentChar());
+            put(comment, 0, comment.length());
+            String eol = model.getEndOfLine();
+            put(eol, 0, eol.length());
         } catch (IOException e) {
             throw new CsvException(rowNum, colNum, e);
         }
@@ -91,11 +310,16 @@ public class CsvWriter implements Closeable, Flushable{
 
     @Override
     public void close() throws IOException {
-        writer.close();
+        try {
+            flushBuffer();
+        } finally {
+            writer.close();
+        }
     }
 
     @Override
     public void flush() throws IOException {
+        flushBuffer();
         writer.flush();
     }
 }
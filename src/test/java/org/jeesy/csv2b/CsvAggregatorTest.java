@@ -0,0 +1,139 @@
+package org.jeesy.csv2b;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Artem Mironov
+ */
+public class CsvAggregatorTest {
+    private static CsvAggregator aggregator() {
+        CsvAggregator aggregator = CsvModel.STANDARD.newAggregator();
+        aggregator.groupBy("country", "city");
+        aggregator.count("rows");
+        aggregator.sum("qty", CsvColumnarReader.Type.LONG, "total");
+        aggregator.min("price", CsvColumnarReader.Type.DOUBLE, "low");
+        aggregator.max("qty", CsvColumnarReader.Type.INT, "most");
+        aggregator.countDistinct("user", "users");
+        return aggregator;
+    }
+
+    private static void check(CsvAggregator.Result result, Map<String, long[]> counts, Map<String, Set<String>> users, Map<String, Double> low) {
+        assertEquals(counts.size(), result.getGroupCount());
+        for(Map.Entry<String, long[]> e : counts.entrySet()) {
+            int g = result.find(e.getKey().split("/", -1));
+            assertTrue(g >= 0);
+            assertEquals(e.getValue()[0], result.getLong(g, "rows"));
+            assertEquals(e.getValue()[1], result.getLong(g, "total"));
+            assertEquals(e.getValue()[2], result.getLong(g, "most"));
+            assertEquals(users.get(e.getKey()).size(), result.getLong(g, "users"));
+            assertEquals(low.get(e.getKey()), result.getDouble(g, "low"), 0);
+        }
+    }
+
+    @Test
+    public void testSequentialAndParallel() throws IOException {
+        Random random = new Random(3);
+        String [] countries = {"US", "DE", "F,R"};
+        StringBuilder csv = new StringBuilder("country,city,user,qty,price\r\n");
+        Map<String, long[]> counts = new HashMap<>();
+        Map<String, Set<String>> users = new HashMap<>();
+        Map<String, Double> low = new HashMap<>();
+        for(int i = 0; i<20000; i++) {
+            String country = countries[random.nextInt(countries.length)];
+            String city = "c\n" + random.nextInt(50);
+            String user = "u" + random.nextInt(300);
+            long qty = random.nextInt(1000);
+            double price = random.nextInt(10000) / 100.0;
+            csv.append('"').append(country).append("\",\"").append(city).append("\",").append(user).append(',')
+                    .append(qty).append(',').append(price).append("\r\n");
+            String key = country + "/" + city;
+            long [] c = counts.get(key);
+            if(c == null) counts.put(key, c = new long[3]);
+            c[0]++;
+            c[1] += qty;
+            c[2] = Math.max(c[2], qty);
+            if(!users.containsKey(key)) users.put(key, new HashSet<String>());
+            users.get(key).add(user);
+            if(!low.containsKey(key) || low.get(key) > price) low.put(key, price);
+        }
+        CsvAggregator.Result sequential = aggregator().aggregate(new StringReader(csv.toString()));
+        check(sequential, counts, users, low);
+
+        Path file = Files.createTempFile("csv2b-agg", ".csv");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+            CsvAggregator aggregator = aggregator();
+            aggregator.setParallel(true);
+            aggregator.setChunkSize(4096);
+            aggregator.setPool(pool);
+            CsvAggregator.Result parallel = aggregator.aggregate(file);
+            check(parallel, counts, users, low);
+            StringWriter expected = new StringWriter();
+            try(CsvWriter writer = CsvModel.STANDARD.newWriter(expected)) {
+                sequential.write(writer);
+            }
+            StringWriter actual = new StringWriter();
+            try(CsvWriter writer = CsvModel.STANDARD.newWriter(actual)) {
+                parallel.write(writer);
+            }
+            assertEquals(expected.toString(), actual.toString());
+        } finally {
+            pool.shutdown();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testOutputAndErrors() throws IOException {
+        CsvAggregator aggregator = CsvModel.STANDARD.newAggregator();
+        aggregator.setHeader(new String[] {"k", "v"});
+        aggregator.groupBy("k");
+        aggregator.count("n");
+        aggregator.sum("v", CsvColumnarReader.Type.DOUBLE, "sum");
+        CsvAggregator.Result result = aggregator.aggregate(new StringReader("b,1.5\r\na,\r\nb,2\r\n\r\nc\r\n"));
+        assertArrayEquals(new String[] {"k", "n", "sum"}, result.getColumnNames());
+        assertTrue(result.isNull(result.find("a"), "sum"));
+        assertFalse(result.isNull(result.find("b"), "sum"));
+        assertEquals(-1, result.find("x"));
+        StringWriter out = new StringWriter();
+        try(CsvWriter writer = CsvModel.STANDARD.newWriter(out)) {
+            result.write(writer);
+        }
+        assertEquals("k,n,sum\r\nb,2,3.5\r\na,1,\r\nc,1,\r\n", out.toString());
+
+        try {
+            aggregator.aggregate(new StringReader("a,1\r\na,x\r\n"));
+            fail();
+        } catch (CsvException e) {
+            assertEquals(2, e.getRow());
+            assertEquals(2, e.getCol());
+        }
+        try {
+            aggregator.countDistinct("missing", "m");
+            aggregator.aggregate(new StringReader("a,1\r\n"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
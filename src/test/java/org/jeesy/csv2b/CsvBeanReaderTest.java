@@ -18,10 +18,20 @@
 
 package org.jeesy.csv2b;
 
+import static org.jeesy.classinfo.converter.DefaultConverter.defaultConverter;
 import static org.junit.Assert.*;
+import org.jeesy.classinfo.TypeInfo;
+import org.jeesy.classinfo.converter.api.ConversionException;
+import org.jeesy.classinfo.converter.api.ConversionService;
+import org.jeesy.classinfo.converter.api.Converter;
 import org.junit.Test;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author Artem Mironov
@@ -70,6 +80,52 @@ public class CsvBeanReaderTest {
         }
     }
 
+    @CsvRow(order = {"count", "total", "price", "active", "stats"})
+    public static class PrimitiveBean {
+        public int count;
+        public long total;
+        public double price;
+        public boolean active;
+        @CsvEmbed
+        public StatsBean stats;
+    }
+
+    @CsvRow(order = {"min", "max"})
+    public static class StatsBean {
+        public int min;
+        public int max = -1;
+    }
+
+    @CsvRow(order = {"id", "holder"})
+    public static class Unbound {
+        public Integer id;
+        @CsvEmbed
+        public Holder holder;
+    }
+
+    @CsvRow(order = {"value"})
+    public static class Holder {
+        public String value;
+
+        //no default constructor, so embedded bean can't be created
+        public Holder(String value) {
+            this.value = value;
+        }
+    }
+
+    public enum Status {
+        NEW, DONE
+    }
+
+    @CsvRow(order = {"country", "status", "comment"})
+    public static class CachedBean {
+        @CsvCol(cacheSize = 16)
+        public String country;
+        @CsvCol(cacheSize = 16)
+        public Status status;
+        public String comment;
+    }
+
     private Reader resourceReader(String resourceName) {
         return new InputStreamReader(Thread.currentThread().getContextClassLoader().getResourceAsStream(resourceName));
     }
@@ -96,4 +152,353 @@ public class CsvBeanReaderTest {
             assertEquals("someField1,someField2,intProp,stringProp,stringProp2\r\nsomeVal1,someVal2,42,stringVal,stringVal2\r\n", sw.toString());
         }
     }
+
+    @Test
+    public void testReadBeansWithHeader() throws IOException {
+        String csv = "1,x,a\r\n2,y,b\r\n";
+        try (CsvBeanReader<ChildClass> reader = CsvModel.STANDARD.newBeanReader(ChildClass.class, new StringReader(csv), new String[] {"intProp", "unknown", "someField1"})) {
+            final List<ChildClass> beans = new ArrayList<>();
+            reader.readBeans(new CsvReader.RowHandler<ChildClass>() {
+                @Override
+                public boolean onError(CsvException e) {
+                    throw e;
+                }
+
+                @Override
+                public boolean onValue(int rowNum, ChildClass value) {
+                    beans.add(value);
+                    return true;
+                }
+            });
+            assertEquals(2, beans.size());
+            assertEquals((Integer)1, beans.get(0).intProp);
+            assertEquals("a", beans.get(0).nestedProp.someField1);
+            assertEquals((Integer)2, beans.get(1).intProp);
+            assertEquals("b", beans.get(1).nestedProp.someField1);
+        }
+    }
+
+    @Test
+    public void testProjectionKeepsColumnErrors() throws IOException {
+        String csv = "1,x,a\r\n2,y,b,extra\r\n";
+        try (CsvBeanReader<ChildClass> reader = CsvModel.STANDARD.newBeanReader(ChildClass.class, new StringReader(csv), new String[] {"intProp", "unknown", "someField1"})) {
+            assertEquals("a", reader.readBean().nestedProp.someField1);
+            try {
+                reader.readBean();
+                fail();
+            } catch (CsvException e) {
+                assertEquals(4, e.getCol());
+            }
+        }
+    }
+
+    @Test
+    public void testReadRowKeepsUnmappedColumns() throws IOException {
+        String csv = "intProp,unknown,someField1\r\n1,x,a\r\n2,y,b\r\n3,z,c\r\n";
+        try (CsvBeanReader<ChildClass> reader = CsvModel.STANDARD.newBeanReader(ChildClass.class, new StringReader(csv), true)) {
+            assertArrayEquals(new String[] {"1", "x", "a"}, reader.readRow());
+            ChildClass bean = reader.readBean();
+            assertEquals(Integer.valueOf(2), bean.intProp);
+            assertEquals("b", bean.nestedProp.someField1);
+            CsvReader.ListRowHandler rows = reader.read(new CsvReader.ListRowHandler());
+            assertArrayEquals(new String[] {"3", "z", "c"}, rows.getRows().get(0));
+        }
+    }
+
+    @Test
+    public void testRethrownColumnErrorReportedOnce() throws IOException {
+        CsvMetrics metrics = new CsvMetrics();
+        final int [] errors = new int[1];
+        try (CsvBeanReader<Unbound> reader = CsvModel.STANDARD.withMetrics(metrics).newBeanReader(Unbound.class, new StringReader("1,x\r\n"), new String[] {"id", "value"})) {
+            reader.readBeans(new CsvReader.RowHandler<Unbound>() {
+                @Override
+                public boolean onError(CsvException e) {
+                    errors[0]++;
+                    throw e;
+                }
+
+                @Override
+                public boolean onValue(int rowNum, Unbound value) {
+                    return true;
+                }
+            });
+            fail();
+        } catch (CsvException e) {
+            assertEquals(2, e.getCol());
+        }
+        assertEquals(1, errors[0]);
+        assertEquals(1, metrics.getConversionErrors());
+    }
+
+    @Test
+    public void testWriteBeanWithNullEmbedded() throws IOException {
+        ChildClass c = new ChildClass();
+        c.intProp = 7;
+        c.stringProp = "a,b";
+        StringWriter sw = new StringWriter();
+        CsvBeanWriter<ChildClass> csvBeanWriter = CsvModel.STANDARD.newBeanWriter(ChildClass.class, sw);
+        csvBeanWriter.writeBean(c);
+        csvBeanWriter.flush();
+        assertEquals(",,7,\"a,b\",\r\n", sw.toString());
+    }
+
+    private static String numberedCsv(int rows) {
+        StringBuilder sb = new StringBuilder("intProp,stringProp\r\n");
+        for(int i = 1; i<=rows; i++) sb.append(i).append(",s").append(i).append("\r\n");
+        return sb.toString();
+    }
+
+    @Test
+    public void testIterator() throws IOException {
+        try (CsvBeanReader<ChildClass> reader = CsvModel.STANDARD.newBeanReader(ChildClass.class, new StringReader(numberedCsv(3)), true)) {
+            Iterator<ChildClass> it = reader.iterator();
+            assertTrue(it.hasNext());
+            assertTrue(it.hasNext());
+            assertEquals((Integer)1, it.next().intProp);
+            assertEquals((Integer)2, it.next().intProp);
+            assertEquals("s3", it.next().stringProp);
+            assertFalse(it.hasNext());
+        }
+    }
+
+    @Test
+    public void testParallelStream() throws IOException {
+        int rows = 10000;
+        try (CsvBeanReader<ChildClass> reader = CsvModel.STANDARD.newBeanReader(ChildClass.class, new StringReader(numberedCsv(rows)), true)) {
+            List<Integer> ids = reader.parallelStream().map(c -> c.intProp).collect(Collectors.toList());
+            assertEquals(rows, ids.size());
+            for(int i = 0; i<rows; i++) assertEquals((Integer)(i + 1), ids.get(i));
+        }
+    }
+
+    @Test(expected = CsvException.class)
+    public void testStreamError() throws IOException {
+        try (CsvBeanReader<ChildClass> reader = CsvModel.STANDARD.newBeanReader(ChildClass.class, new StringReader("intProp\r\n1\r\nx\r\n"), true)) {
+            reader.stream().count();
+        }
+    }
+
+    @Test
+    public void testPrimitiveProperties() throws IOException {
+        String csv = "count,total,price,active,min,max\r\n-5,9223372036854775807,12.5,TRUE,3,\r\n,1,1e-3,no,,\r\n";
+        try (CsvBeanReader<PrimitiveBean> reader = CsvModel.STANDARD.newBeanReader(PrimitiveBean.class, new StringReader(csv), true)) {
+            PrimitiveBean b = reader.readBean();
+            assertEquals(-5, b.count);
+            assertEquals(Long.MAX_VALUE, b.total);
+            assertEquals(12.5, b.price, 0);
+            assertTrue(b.active);
+            assertEquals(3, b.stats.min);
+            assertEquals(-1, b.stats.max);
+            b = reader.readBean();
+            assertEquals(0, b.count);
+            assertEquals(0.001, b.price, 0);
+            assertFalse(b.active);
+            assertNotNull(b.stats);
+
+            StringWriter sw = new StringWriter();
+            CsvBeanWriter<PrimitiveBean> writer = CsvModel.STANDARD.newBeanWriter(PrimitiveBean.class, sw);
+            b.stats = null;
+            writer.writeBean(b);
+            b.count = Integer.MIN_VALUE;
+            b.total = Long.MIN_VALUE;
+            b.stats = new StatsBean();
+            writer.writeBean(b);
+            writer.flush();
+            assertEquals("0,1,0.001,false,,\r\n-2147483648,-9223372036854775808,0.001,false,0,-1\r\n", sw.toString());
+        }
+    }
+
+    /**
+     * Conversion service with yes/no booleans
+     */
+    private static class YesNoConverter implements ConversionService {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <S, D> Converter<S, D> converterFor(Class<S> src, Class<D> dst) {
+            if(src == String.class && dst == boolean.class) return (Converter<S, D>) new Converter<String, Boolean>() {
+                @Override
+                public Boolean convert(String src, TypeInfo<String> srcType, TypeInfo<Boolean> dstType) {
+                    return "Y".equals(src);
+                }
+            };
+            if(src == boolean.class && dst == String.class) return (Converter<S, D>) new Converter<Boolean, String>() {
+                @Override
+                public String convert(Boolean src, TypeInfo<Boolean> srcType, TypeInfo<String> dstType) {
+                    return src ? "Y" : "N";
+                }
+            };
+            return defaultConverter().converterFor(src, dst);
+        }
+
+        @Override
+        public <C extends Converter> C converterByType(Class<C> type) {
+            return defaultConverter().converterByType(type);
+        }
+
+        @Override
+        public <S, D> D convertType(S src, TypeInfo<S> srcType, TypeInfo<D> dstType) throws ConversionException {
+            return converterFor(srcType.getType(), dstType.getType()).convert(src, srcType, dstType);
+        }
+    }
+
+    @Test
+    public void testCustomPrimitiveConverter() throws IOException {
+        CsvModel model = new CsvModel(',', '"', "\r\n", true, '#', new YesNoConverter());
+        try (CsvBeanReader<PrimitiveBean> reader = model.newBeanReader(PrimitiveBean.class, new StringReader("count,active\r\n1,Y\r\n2,true\r\n"), true)) {
+            PrimitiveBean b = reader.readBean();
+            assertEquals(1, b.count);
+            assertTrue(b.active);
+            assertFalse(reader.readBean().active);
+
+            StringWriter sw = new StringWriter();
+            CsvBeanWriter<PrimitiveBean> writer = model.newBeanWriter(PrimitiveBean.class, sw);
+            b.stats = null;
+            writer.writeBean(b);
+            writer.flush();
+            assertEquals("1,0,0.0,Y,,\r\n", sw.toString());
+        }
+    }
+
+    @Test
+    public void testPrimitiveConversionError() throws IOException {
+        try (CsvBeanReader<PrimitiveBean> reader = CsvModel.STANDARD.newBeanReader(PrimitiveBean.class, new StringReader("count,min\r\n1x,2\r\n"), true)) {
+            reader.readBean();
+            fail();
+        } catch (CsvException e) {
+            assertEquals(1, e.getCol());
+            assertFalse(e.isFatal());
+        }
+    }
+
+    @Test
+    public void testValueCache() throws IOException {
+        StringBuilder csv = new StringBuilder("country,status,comment\r\n");
+        for(int i = 0; i<100; i++) csv.append(i % 2 == 0 ? "US" : "DE").append(',').append(i % 3 == 0 ? "NEW" : "DONE").append(",c\r\n");
+        CsvModel model = CsvModel.STANDARD.withColumnCache(4, "comment");
+        try (CsvBeanReader<CachedBean> reader = model.newBeanReader(CachedBean.class, new StringReader(csv.toString()), true)) {
+            List<CachedBean> beans = reader.stream().collect(Collectors.toList());
+            assertEquals(100, beans.size());
+            for(int i = 0; i<100; i++) {
+                CachedBean b = beans.get(i);
+                assertEquals(i % 2 == 0 ? "US" : "DE", b.country);
+                assertSame(beans.get(i % 2).country, b.country);
+                assertEquals(i % 3 == 0 ? Status.NEW : Status.DONE, b.status);
+                assertSame(beans.get(0).comment, b.comment);
+            }
+        }
+    }
+
+    @Test
+    public void testValueCacheEviction() {
+        CsvValueCache cache = new CsvValueCache(8);
+        assertEquals(8, cache.capacity());
+        for(int i = 0; i<1000; i++) {
+            String key = "k" + i;
+            assertNull(cache.get(key));
+            assertSame(key, cache.put(key, key).value);
+            assertSame(key, cache.get(new StringBuilder(key)).key);
+        }
+        int cached = 0;
+        for(int i = 0; i<1000; i++) if(cache.get("k" + i) != null) cached++;
+        assertTrue(cached <= 8);
+        assertTrue(cached > 0);
+    }
+
+    @Test
+    public void testPlanCache() throws Exception {
+        CsvModel model = CsvModel.STANDARD.withColumnCache(4, "comment");
+        model.warmUp(CachedBean.class);
+        model.warmUp(ChildClass.class, new String[] {"intProp", "someField1"});
+        assertEquals(2, model.getPlanCacheMisses());
+        assertEquals(3, model.getPlanCacheSize());
+
+        final String csv = "country,status,comment\r\nUS,NEW,x\r\n";
+        final CsvModel shared = model;
+        Thread [] threads = new Thread[4];
+        final List<Throwable> errors = new ArrayList<>();
+        for(int t = 0; t<threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for(int i = 0; i<100; i++) {
+                            try (CsvBeanReader<CachedBean> reader = shared.newBeanReader(CachedBean.class, new StringReader(csv), true)) {
+                                assertEquals(Status.NEW, reader.readBean().status);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread t : threads) t.join();
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(2, model.getPlanCacheMisses());
+        assertEquals(400, model.getPlanCacheHits());
+
+        try (CsvBeanReader<ChildClass> reader = model.newBeanReader(ChildClass.class, new StringReader("5,a\r\n"), new String[] {"intProp", "someField1"})) {
+            assertEquals(Integer.valueOf(5), reader.readBean().intProp);
+        }
+        StringWriter out = new StringWriter();
+        CsvBeanWriter<CachedBean> writer = model.newBeanWriter(CachedBean.class, out);
+        writer.writeHeader();
+        CachedBean bean = new CachedBean();
+        bean.country = "DE";
+        writer.writeBean(bean);
+        writer.flush();
+        assertEquals("country,status,comment\r\nDE,,\r\n", out.toString());
+        assertEquals(2, model.getPlanCacheMisses());
+        assertEquals(403, model.getPlanCacheHits());
+
+        model.clearPlanCache();
+        assertEquals(0, model.getPlanCacheSize());
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        CsvMetrics metrics = new CsvMetrics();
+        CsvModel model = CsvModel.STANDARD.withMetrics(metrics);
+        StringBuilder csv = new StringBuilder("intProp,stringProp\r\n");
+        for(int i = 1; i<=3000; i++) csv.append(i % 1000 == 0 ? "x" : String.valueOf(i)).append(",s").append(i).append("\r\n");
+        final List<ChildClass> beans = new ArrayList<>();
+        try (CsvBeanReader<ChildClass> reader = model.newBeanReader(ChildClass.class, new StringReader(csv.toString()), true)) {
+            reader.readBeans(new CsvReader.RowHandler<ChildClass>() {
+                @Override
+                public boolean onError(CsvException e) {
+                    return true;
+                }
+
+                @Override
+                public boolean onValue(int rowNum, ChildClass value) {
+                    beans.add(value);
+                    return true;
+                }
+            });
+        }
+        assertEquals(3001, metrics.getRowsRead());
+        assertEquals(csv.length(), metrics.getInputRead());
+        assertEquals(3, metrics.getConversionErrors());
+        assertEquals(Collections.singletonMap("intProp", 3L), metrics.getColumnErrors());
+        assertEquals(2, metrics.getSamples(CsvMetricsListener.Phase.PARSE));
+        assertEquals(2, metrics.getSamples(CsvMetricsListener.Phase.CONVERT));
+        assertEquals(2, metrics.getSamples(CsvMetricsListener.Phase.SET));
+        assertTrue(metrics.getMeanNanos(CsvMetricsListener.Phase.CONVERT) > 0);
+
+        StringWriter out = new StringWriter();
+        try (CsvBeanWriter<ChildClass> writer = model.newBeanWriter(ChildClass.class, out)) {
+            writer.writeBeans(beans.subList(0, 2000));
+        }
+        assertEquals(2000, metrics.getRowsWritten());
+        assertEquals(out.toString().length(), metrics.getCharsWritten());
+        assertEquals(1, metrics.getSamples(CsvMetricsListener.Phase.WRITE));
+
+        metrics.reset();
+        assertEquals(0, metrics.getRowsRead());
+        assertTrue(metrics.getColumnErrors().isEmpty());
+        assertNull(CsvModel.STANDARD.getMetrics());
+    }
 }
@@ -0,0 +1,83 @@
+package org.jeesy.csv2b;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Artem Mironov
+ */
+public class CsvColumnarReaderTest {
+    @Test
+    public void testReadColumns() throws IOException {
+        StringBuilder csv = new StringBuilder("id,country,skip,price,qty\r\n");
+        String [] countries = {"US", "DE", "\"F,R\""};
+        for(int i = 0; i<100; i++) {
+            csv.append(i).append(',').append(countries[i % 3]).append(",x,").append(i / 4.0).append(',').append(i % 2 == 0 ? "" : i).append("\r\n");
+        }
+        csv.append("100,US\r\n");
+        try(CsvColumnarReader reader = CsvModel.STANDARD.newColumnarReader(new StringReader(csv.toString()))) {
+            reader.addColumn("id", CsvColumnarReader.Type.LONG);
+            reader.addColumn("country", CsvColumnarReader.Type.STRING);
+            reader.addColumn("price", CsvColumnarReader.Type.DOUBLE);
+            reader.addColumn("qty", CsvColumnarReader.Type.INT);
+            CsvTable table = reader.read();
+            assertEquals(101, table.getRowCount());
+            assertArrayEquals(new String[] {"id", "country", "price", "qty"}, table.getColumnNames());
+            CsvTable.LongColumn ids = table.getLongColumn("id");
+            CsvTable.StringColumn country = table.getStringColumn("country");
+            CsvTable.DoubleColumn price = table.getDoubleColumn("price");
+            CsvTable.IntColumn qty = table.getIntColumn("qty");
+            for(int i = 0; i<100; i++) {
+                assertEquals(i, ids.get(i));
+                assertEquals(i / 4.0, price.get(i), 0);
+                assertEquals(i % 2 == 0, qty.isNull(i));
+                assertEquals(i % 2 == 0 ? 0 : i, qty.get(i));
+            }
+            assertArrayEquals(new String[] {"US", "DE", "F,R"}, country.getDictionary());
+            assertEquals("F,R", country.get(98));
+            assertEquals(2, country.getCode(98));
+            assertEquals("US", country.get(100));
+            assertTrue(price.isNull(100));
+            assertTrue(Double.isNaN(price.get(100)));
+            assertFalse(ids.isNull(100));
+            assertEquals(101, qty.toArray().length);
+        }
+    }
+
+    @CsvRow(order = {"name", "amount"})
+    public static class Row {
+        public String name;
+        @CsvCol(name = "AMT")
+        public Double amount;
+    }
+
+    @Test
+    public void testBeanColumnsAndErrors() throws IOException {
+        try(CsvColumnarReader reader = CsvModel.STANDARD.newColumnarReader(new StringReader("AMT,name\r\n1.5,a\r\nx,\r\n"))) {
+            reader.addColumns(Row.class, "name", "amount");
+            try {
+                reader.read();
+                fail();
+            } catch (CsvException e) {
+                assertEquals(3, e.getRow());
+                assertEquals(1, e.getCol());
+            }
+        }
+        try(CsvColumnarReader reader = CsvModel.STANDARD.newColumnarReader(new StringReader("1.5,\r\n"), new String[] {"AMT", "name"})) {
+            reader.addColumns(Row.class, "name", "amount");
+            CsvTable table = reader.read();
+            assertEquals(1, table.getRowCount());
+            assertEquals(1.5, table.getDoubleColumn("AMT").get(0), 0);
+            assertNull(table.getStringColumn("name").get(0));
+        }
+    }
+}
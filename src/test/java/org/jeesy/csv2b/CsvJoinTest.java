@@ -0,0 +1,152 @@
+package org.jeesy.csv2b;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Artem Mironov
+ */
+public class CsvJoinTest {
+    @CsvRow(order = {"id", "countryCode", "country"})
+    public static class Order {
+        public Integer id;
+        @CsvCol(name = "code")
+        public String countryCode;
+        @CsvCol(name = "name")
+        public String country;
+    }
+
+    private static final String COUNTRIES = "code,name\r\nDE,Germany\r\nUS,United States\r\nFR,\"France, \"\"FR\"\"\"\r\nUS,USA\r\n";
+    private static final String ORDERS = "id,code\r\n1,US\r\n2,IT\r\n3,DE\r\n4,\r\n";
+
+    private static String join(CsvJoin join, String build, String probe) throws IOException {
+        StringWriter out = new StringWriter();
+        try(CsvWriter writer = CsvModel.STANDARD.newWriter(out)) {
+            join.join(new StringReader(build), new StringReader(probe), writer);
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void testInnerAndLeft() throws IOException {
+        CsvJoin join = CsvModel.STANDARD.newJoin();
+        join.setBuildKeys("code");
+        join.setProbeKeys("code");
+        assertEquals("id,code,name\r\n1,US,United States\r\n1,US,USA\r\n3,DE,Germany\r\n", join(join, COUNTRIES, ORDERS));
+        join.setType(CsvJoin.Type.LEFT);
+        assertEquals("id,code,name\r\n1,US,United States\r\n1,US,USA\r\n2,IT,\r\n3,DE,Germany\r\n4,,\r\n", join(join, COUNTRIES, ORDERS));
+
+        final List<Order> orders = new ArrayList<>();
+        join.setBuildKeys(Order.class, "countryCode");
+        join.setProbeKeys(Order.class, "countryCode");
+        join.join(new StringReader(COUNTRIES), new StringReader("id,code\r\n1,FR\r\nx,DE\r\n5,PL\r\n"), Order.class, new CsvReader.RowHandler<Order>() {
+            @Override
+            public boolean onError(CsvException e) {
+                assertEquals(3, e.getRow());
+                assertEquals(1, e.getCol());
+                return true;
+            }
+
+            @Override
+            public boolean onValue(int rowNum, Order value) {
+                assertEquals(orders.size() + 1, rowNum);
+                orders.add(value);
+                return true;
+            }
+        });
+        //bean of the row with error is still passed as handler accepted the error
+        assertEquals(3, orders.size());
+        assertEquals("France, \"FR\"", orders.get(0).country);
+        assertNull(orders.get(1).id);
+        assertEquals("Germany", orders.get(1).country);
+        assertEquals(5, (int) orders.get(2).id);
+        assertNull(orders.get(2).country);
+
+        try {
+            join.setProbeKeys("missing");
+            join(join, COUNTRIES, ORDERS);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testClashingColumns() throws IOException {
+        CsvJoin join = CsvModel.STANDARD.newJoin();
+        join.setBuildKeys("code");
+        join.setProbeKeys("id");
+        assertEquals("id,code,name,build.name\r\nDE,1,x,Germany\r\n",
+                join(join, "code,name\r\nDE,Germany\r\n", "id,code,name\r\nDE,1,x\r\n"));
+        try {
+            join(join, "code,name\r\nDE,Germany\r\n", "id,name,build.name\r\nDE,x,y\r\n");
+            fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testGraceJoin() throws IOException {
+        StringBuilder dim = new StringBuilder("k,v\r\n");
+        StringBuilder fact = new StringBuilder("n,k\r\n");
+        List<String> expected = new ArrayList<>();
+        for(int i = 0; i<3000; i++) dim.append(i).append(",\"v\r\n").append(i).append("\"\r\n");
+        dim.append("7,again\r\n");
+        for(int i = 0; i<6000; i++) {
+            int k = (i * 7919) % 4000;
+            fact.append(i).append(',').append(k).append("\r\n");
+            if(k < 3000) expected.add(i + "," + k + ",\"v\r\n" + k + "\"\r\n");
+            else expected.add(i + "," + k + ",\r\n");
+            if(k == 7) expected.add(i + ",7,again\r\n");
+        }
+        Path dir = Files.createTempDirectory("csv2b-join");
+        try {
+            CsvJoin join = CsvModel.STANDARD.newJoin();
+            join.setType(CsvJoin.Type.LEFT);
+            join.setBuildKeys("k");
+            join.setProbeKeys("k");
+            join.setTempDirectory(dir);
+            join.setMemoryBudget(20000);
+            join.setPartitions(8);
+            String out = join(join, dim.toString(), fact.toString());
+            String header = "n,k,v\r\n";
+            assertEquals(header, out.substring(0, header.length()));
+            //rows come grouped by partition, compare them in probe order
+            List<String> actual = new ArrayList<>();
+            for(String [] row : CsvModel.STANDARD.newReader(new StringReader(out.substring(header.length()))).read(new CsvReader.ListRowHandler()).getRows()) {
+                StringWriter line = new StringWriter();
+                try(CsvWriter writer = CsvModel.STANDARD.newWriter(line)) {
+                    writer.write(row);
+                }
+                actual.add(line.toString());
+            }
+            Collections.sort(actual, new java.util.Comparator<String>() {
+                @Override
+                public int compare(String a, String b) {
+                    return Integer.compare(Integer.parseInt(a.substring(0, a.indexOf(','))), Integer.parseInt(b.substring(0, b.indexOf(','))));
+                }
+            });
+            assertEquals(expected, actual);
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                assertFalse("partition files are deleted", files.iterator().hasNext());
+            }
+        } finally {
+            Files.deleteIfExists(dir);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.jeesy.csv2b;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Artem Mironov
+ */
+public class CsvLookupTableTest {
+    @CsvRow(order = {"country", "code", "name", "rate"})
+    public static class Rate {
+        public String country;
+        public Integer code;
+        public String name;
+        public Double rate;
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        StringBuilder sb = new StringBuilder("country,code,name,rate\r\n");
+        for(int i = 0; i<5000; i++) {
+            sb.append("c").append(i % 50).append(',').append(i).append(',');
+            sb.append(i % 7 == 0 ? "\"multi\r\nline, \"\"" + i + "\"\"\"" : "name" + i).append(',');
+            sb.append(i == 4321 ? "bad" : String.valueOf(i * 0.25)).append(i % 3 == 0 ? "\n" : "\r\n");
+        }
+        sb.append("c1,1,duplicate,0\r\n");
+        Path path = Files.createTempFile("csv2b", ".csv");
+        Files.write(path, sb.toString().getBytes(StandardCharsets.UTF_8));
+        try(CsvLookupTable<Rate> table = CsvModel.STANDARD.newLookupTable(Rate.class, path, true, "country", "code")) {
+            assertEquals(5001, table.size());
+            for(int i = 0; i<5000; i += 37) {
+                if(i == 4321) continue;
+                Rate rate = table.get("c" + (i % 50), String.valueOf(i));
+                assertEquals(Integer.valueOf(i), rate.code);
+                assertEquals(i % 7 == 0 ? "multi\r\nline, \"" + i + "\"" : "name" + i, rate.name);
+                assertEquals(i * 0.25, rate.rate, 0);
+            }
+            assertEquals("name1", table.get("c1", "1").name);
+            assertNull(table.get("c2", "1"));
+            assertNull(table.get("c1", "5000"));
+
+            Rate cached = table.get("c3", "3");
+            assertSame(cached, table.get("c3", "3"));
+            table.setCacheSize(0);
+            assertNotSame(cached, table.get("c3", "3"));
+
+            try {
+                table.get("c21", "4321");
+                fail();
+            } catch (CsvException e) {
+                assertEquals(4323, e.getRow());
+                assertEquals(4, e.getCol());
+            }
+            assertTrue(table.get("c20", "4320") != null);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testLookupNotInMetrics() throws Exception {
+        Path path = Files.createTempFile("csv2b", ".csv");
+        Files.write(path, "country,code,name,rate\r\nc1,1,a,0\r\nc2,2,b,0\r\n".getBytes(StandardCharsets.UTF_8));
+        CsvMetrics metrics = new CsvMetrics();
+        try(CsvLookupTable<Rate> table = CsvModel.STANDARD.withMetrics(metrics).newLookupTable(Rate.class, path, true, "country")) {
+            table.setCacheSize(0);
+            assertEquals("b", table.get("c2").name);
+            assertEquals("a", table.get("c1").name);
+        } finally {
+            Files.delete(path);
+        }
+        assertEquals(0, metrics.getRowsRead());
+        assertEquals(0, metrics.getInputRead());
+    }
+
+    @Test
+    public void testDuplicatesAfterGrow() throws Exception {
+        StringBuilder sb = new StringBuilder("country,code,name,rate\r\n");
+        //every key is repeated after all keys, table grows several times in between
+        for(int copy = 0; copy<2; copy++) {
+            for(int i = 0; i<2000; i++) sb.append("key").append(i).append(',').append(copy).append(",n,0\r\n");
+        }
+        Path path = Files.createTempFile("csv2b", ".csv");
+        Files.write(path, sb.toString().getBytes(StandardCharsets.UTF_8));
+        try(CsvLookupTable<Rate> table = CsvModel.STANDARD.newLookupTable(Rate.class, path, true, "country")) {
+            table.setCacheSize(0);
+            for(int i = 0; i<2000; i++) assertEquals("key" + i, Integer.valueOf(0), table.get("key" + i).code);
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
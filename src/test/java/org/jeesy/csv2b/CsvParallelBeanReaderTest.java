@@ -0,0 +1,216 @@
+package org.jeesy.csv2b;
+
+import org.jeesy.classinfo.TypeInfo;
+import org.jeesy.classinfo.converter.api.ConversionException;
+import org.jeesy.classinfo.converter.api.StringParser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Artem Mironov
+ */
+public class CsvParallelBeanReaderTest {
+    @CsvRow(order = {"id", "name", "amount"})
+    public static class Item {
+        public Integer id;
+        public String name;
+        public Double amount;
+    }
+
+    public static class FailingParser implements StringParser<String> {
+        @Override
+        public String convert(String src, TypeInfo<String> srcType, TypeInfo<String> dstType) throws ConversionException {
+            if("boom".equals(src)) throw new AssertionError("Parser failed");
+            return src;
+        }
+    }
+
+    @CsvRow(order = {"id", "name"})
+    public static class Fragile {
+        public Integer id;
+        @CsvCol(parser = FailingParser.class)
+        public String name;
+    }
+
+    private static class Collector implements CsvReader.RowHandler<Item> {
+        private final List<String> rows = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+
+        @Override
+        public boolean onError(CsvException e) {
+            errors.add(e.getRow() + ":" + e.getCol());
+            return true;
+        }
+
+        @Override
+        public boolean onValue(int rowNum, Item value) {
+            rows.add(rowNum + ":" + value.id + ":" + value.name + ":" + value.amount);
+            return true;
+        }
+    }
+
+    private static String generate(int rows) {
+        Random rnd = new Random(1);
+        StringBuilder sb = new StringBuilder("id,name,amount\r\n");
+        for(int i = 0; i<rows; i++) {
+            sb.append(i).append(',');
+            switch(rnd.nextInt(4)) {
+                case 0: sb.append("\"multi\r\nline, \"\"quoted\"\"\""); break;
+                case 1: sb.append("\"\n\""); break;
+                default: sb.append("name").append(i);
+            }
+            sb.append(',').append(rnd.nextInt(10) == 0 ? "bad" : String.valueOf(i * 0.5)).append("\r\n");
+            if(rnd.nextInt(20) == 0) sb.append("\r\n");
+        }
+        return sb.toString();
+    }
+
+    private static List<String> sorted(List<String> rows) {
+        List<String> res = new ArrayList<>(rows);
+        Collections.sort(res, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return Integer.valueOf(o1.substring(0, o1.indexOf(':'))).compareTo(Integer.valueOf(o2.substring(0, o2.indexOf(':'))));
+            }
+        });
+        return res;
+    }
+
+    @Test
+    public void testSameAsSequential() throws IOException {
+        String csv = generate(500);
+        Path path = Files.createTempFile("csv2b", ".csv");
+        try {
+            Files.write(path, csv.getBytes(StandardCharsets.UTF_8));
+            Collector expected = new Collector();
+            try(CsvBeanReader<Item> reader = CsvModel.STANDARD.newBeanReader(Item.class, new StringReader(csv), true)) {
+                reader.readBeans(expected);
+            }
+            assertEquals(500, expected.rows.size());
+            assertTrue(expected.errors.size() > 0);
+            for(long chunkSize : new long[] {1, 7, 100, 1000, 1 << 20}) {
+                for(boolean ordered : new boolean[] {true, false}) {
+                    Collector actual = new Collector();
+                    try(CsvParallelBeanReader<Item> reader = CsvModel.STANDARD.newParallelBeanReader(Item.class, path, true)) {
+                        reader.setChunkSize(chunkSize);
+                        reader.setOrdered(ordered);
+                        reader.readBeans(actual);
+                    }
+                    if(ordered) {
+                        assertEquals(expected.rows, actual.rows);
+                        assertEquals(expected.errors, actual.errors);
+                    } else {
+                        assertEquals(expected.rows, sorted(actual.rows));
+                        assertEquals(sorted(expected.errors), sorted(actual.errors));
+                    }
+                }
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testConversionExecutor() throws IOException, InterruptedException {
+        String csv = generate(500) + "1,\"unfinished";
+        Collector expected = new Collector();
+        try(CsvBeanReader<Item> reader = CsvModel.STANDARD.newBeanReader(Item.class, new StringReader(csv), true)) {
+            try {
+                reader.readBeans(expected);
+            } catch (RuntimeException e) {
+                expected.errors.add(e.getMessage());
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for(int batchSize : new int[] {1, 7, 1000}) {
+                for(boolean ordered : new boolean[] {true, false}) {
+                    Collector actual = new Collector();
+                    try(CsvBeanReader<Item> reader = CsvModel.STANDARD.newBeanReader(Item.class, new StringReader(csv), true)) {
+                        reader.setConversionExecutor(executor);
+                        reader.setBatchSize(batchSize);
+                        reader.setOrdered(ordered);
+                        try {
+                            reader.readBeans(actual);
+                        } catch (RuntimeException e) {
+                            actual.errors.add(e.getMessage());
+                        }
+                    }
+                    if(ordered) {
+                        assertEquals(expected.rows, actual.rows);
+                        assertEquals(expected.errors, actual.errors);
+                    } else {
+                        assertEquals(expected.rows, sorted(actual.rows));
+                        assertEquals(expected.errors.size(), actual.errors.size());
+                    }
+                }
+            }
+            final List<Integer> ids = new ArrayList<>();
+            try(CsvBeanReader<Item> reader = CsvModel.STANDARD.newBeanReader(Item.class, new StringReader(csv), true)) {
+                reader.setConversionExecutor(executor);
+                reader.setBatchSize(3);
+                reader.readBeans(new CsvReader.RowHandler<Item>() {
+                    @Override
+                    public boolean onError(CsvException e) {
+                        return false;
+                    }
+
+                    @Override
+                    public boolean onValue(int rowNum, Item value) {
+                        ids.add(value.id);
+                        return true;
+                    }
+                });
+            }
+            assertTrue(ids.size() > 0 && ids.size() < 500);
+            for(int i = 0; i<ids.size(); i++) assertEquals((Integer) i, ids.get(i));
+
+            //error of parser is rethrown after the beans before it
+            StringBuilder fragile = new StringBuilder("id,name\r\n");
+            for(int i = 0; i<20; i++) fragile.append(i).append(',').append(i == 7 ? "boom" : "n" + i).append("\r\n");
+            ids.clear();
+            try(CsvBeanReader<Fragile> reader = CsvModel.STANDARD.newBeanReader(Fragile.class, new StringReader(fragile.toString()), true)) {
+                reader.setConversionExecutor(executor);
+                reader.setBatchSize(5);
+                reader.readBeans(new CsvReader.RowHandler<Fragile>() {
+                    @Override
+                    public boolean onError(CsvException e) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onValue(int rowNum, Fragile value) {
+                        ids.add(value.id);
+                        return true;
+                    }
+                });
+                fail();
+            } catch (CsvException e) {
+                assertEquals(9, e.getRow());
+                assertTrue(e.getException().getCause() instanceof AssertionError);
+            }
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6), ids);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.jeesy.csv2b;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Artem Mironov
+ */
+public class CsvPartitionedWriterTest {
+    @CsvRow(order = {"tenant", "id", "amount"})
+    public static class Sale {
+        public String tenant;
+        public Integer id;
+        public Double amount;
+    }
+
+    private static Sale sale(String tenant, int id) {
+        Sale s = new Sale();
+        s.tenant = tenant;
+        s.id = id;
+        s.amount = id * 1.5;
+        return s;
+    }
+
+    private static void deleteAll(Path dir) throws Exception {
+        for(Path p : Files.newDirectoryStream(dir)) Files.delete(p);
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testPartitionsAndRolling() throws Exception {
+        Path dir = Files.createTempDirectory("csv2b");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            String [] tenants = {"acme", "b/c", "zed", "x"};
+            List<Sale> sales = new ArrayList<>();
+            for(int i = 0; i<200; i++) sales.add(sale(tenants[(i * 7 + i / 3) % tenants.length], i));
+            try(CsvPartitionedWriter<Sale> writer = CsvModel.STANDARD.newPartitionedWriter(Sale.class, dir, "sales.csv")) {
+                writer.setPartitioner(new CsvPartitionedWriter.Partitioner<Sale>() {
+                    @Override
+                    public String partitionOf(Sale bean) {
+                        return bean.tenant;
+                    }
+                });
+                writer.setMaxRowsPerFile(20);
+                writer.setMaxOpenFiles(2);
+                writer.setBufferSize(16);
+                writer.setFlushExecutor(executor);
+                writer.writeBeans(sales);
+                writer.flush();
+                assertTrue(Files.exists(dir.resolve("sales-b_002fc-1.csv")));
+            }
+
+            Map<String, List<Integer>> expected = new HashMap<>();
+            for(Sale s : sales) {
+                if(!expected.containsKey(s.tenant)) expected.put(s.tenant, new ArrayList<Integer>());
+                expected.get(s.tenant).add(s.id);
+            }
+            for(String tenant : tenants) {
+                List<Integer> ids = new ArrayList<>();
+                String name = tenant.replace("/", "_002f");
+                int files = 0;
+                for(int n = 1; Files.exists(dir.resolve("sales-" + name + "-" + n + ".csv")); n++) {
+                    files++;
+                    String content = new String(Files.readAllBytes(dir.resolve("sales-" + name + "-" + n + ".csv")), StandardCharsets.UTF_8);
+                    try(CsvBeanReader<Sale> reader = CsvModel.STANDARD.newBeanReader(Sale.class, new java.io.StringReader(content), true)) {
+                        assertEquals("tenant", reader.getHeader()[0]);
+                        int rows = 0;
+                        for(Sale s : reader) {
+                            assertEquals(tenant, s.tenant);
+                            ids.add(s.id);
+                            rows++;
+                        }
+                        assertTrue(rows <= 20);
+                    }
+                }
+                assertEquals(expected.get(tenant), ids);
+                assertEquals((ids.size() + 19) / 20, files);
+            }
+        } finally {
+            executor.shutdown();
+            deleteAll(dir);
+        }
+    }
+
+    @Test
+    public void testRollBySize() throws Exception {
+        Path dir = Files.createTempDirectory("csv2b");
+        try {
+            CsvPartitionedWriter<Sale> writer = new CsvPartitionedWriter<>(Sale.class, dir, "out", CsvModel.STANDARD);
+            writer.setMaxFileSize(100);
+            writer.setWriteHeader(false);
+            for(int i = 0; i<100; i++) writer.writeBean(sale("t", i));
+            writer.close();
+            List<Path> files = writer.getFiles();
+            assertTrue(files.size() > 5);
+            StringBuilder all = new StringBuilder();
+            for(Path file : files) {
+                byte [] content = Files.readAllBytes(file);
+                assertTrue(content.length < 100 + 20);
+                all.append(new String(content, StandardCharsets.UTF_8));
+            }
+            assertEquals(dir.resolve("out-1"), files.get(0));
+            StringBuilder expected = new StringBuilder();
+            for(int i = 0; i<100; i++) expected.append("t,").append(i).append(',').append(i * 1.5).append("\r\n");
+            assertEquals(expected.toString(), all.toString());
+        } finally {
+            deleteAll(dir);
+        }
+    }
+
+    @Test
+    public void testSimilarKeys() throws Exception {
+        Path dir = Files.createTempDirectory("csv2b");
+        try {
+            CsvPartitionedWriter<Sale> writer = new CsvPartitionedWriter<>(Sale.class, dir, "out.csv", CsvModel.STANDARD);
+            writer.setPartitioner(new CsvPartitionedWriter.Partitioner<Sale>() {
+                @Override
+                public String partitionOf(Sale bean) {
+                    return bean.tenant;
+                }
+            });
+            writer.setMaxOpenFiles(1);
+            String [] tenants = {"a b", "a_b", "a_0020b"};
+            for(int i = 0; i<9; i++) writer.writeBean(sale(tenants[i % 3], i));
+            writer.close();
+            List<Path> files = writer.getFiles();
+            assertEquals(3, files.size());
+            assertEquals(3, new HashSet<>(files).size());
+            for(int t = 0; t<3; t++) {
+                StringBuilder expected = new StringBuilder("tenant,id,amount\r\n");
+                for(int i = t; i<9; i += 3) expected.append(tenants[t]).append(',').append(i).append(',').append(i * 1.5).append("\r\n");
+                assertEquals(expected.toString(), new String(Files.readAllBytes(files.get(t)), StandardCharsets.UTF_8));
+            }
+        } finally {
+            deleteAll(dir);
+        }
+    }
+
+    @Test
+    public void testFailedOpen() throws Exception {
+        Path dir = Files.createTempDirectory("csv2b");
+        Path blocked = dir.resolve("out-t-1");
+        Files.createDirectory(blocked);
+        try {
+            CsvPartitionedWriter<Sale> writer = new CsvPartitionedWriter<>(Sale.class, dir, "out", CsvModel.STANDARD);
+            writer.setPartitioner(new CsvPartitionedWriter.Partitioner<Sale>() {
+                @Override
+                public String partitionOf(Sale bean) {
+                    return bean.tenant;
+                }
+            });
+            try {
+                writer.writeBean(sale("t", 0));
+                fail();
+            } catch (CsvException e) {
+                //directory can't be opened as file
+            }
+            assertTrue(writer.getFiles().isEmpty());
+            Files.delete(blocked);
+            writer.writeBean(sale("t", 1));
+            writer.close();
+            assertEquals(Collections.singletonList(blocked), writer.getFiles());
+            assertEquals("tenant,id,amount\r\nt,1,1.5\r\n", new String(Files.readAllBytes(blocked), StandardCharsets.UTF_8));
+        } finally {
+            deleteAll(dir);
+        }
+    }
+}
@@ -5,12 +5,24 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.jeesy.classinfo.ClassInfoScanner.classInfo;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Artem Mironov
@@ -35,4 +47,224 @@ public class CsvReaderTest {
             assertEquals(6, lrh.getLastRowNum());
         }
     }
+
+    @Test
+    public void testReadWithSmallBuffer() throws IOException {
+        for(int bufferSize = 1; bufferSize < 16; bufferSize++) {
+            try(CsvReader reader = new CsvReader(new CsvCharTokenizer(
+                    new InputStreamReader(Thread.currentThread().getContextClassLoader().getResourceAsStream("test.csv"), "UTF-8"),
+                    CsvModel.STANDARD, bufferSize), CsvModel.STANDARD)) {
+                List<String[]> rows = reader.read(new CsvReader.ListRowHandler()).getRows();
+                assertEquals(6, rows.size());
+                assertRow(rows.get(2), "1999", "Chevy", "Venture \"Extended Edition\"", "", "4900.00");
+                assertRow(rows.get(3), "1996", "Jeep", "Grand Cherokee", "MUST SELL!\nair, moon roof, loaded", "4799.00");
+            }
+        }
+    }
+
+    @Test
+    public void testRowNumbers() throws IOException {
+        try(CsvReader reader = CsvModel.STANDARD.newReader(new StringReader("a,b\r\n\r\nc,\"d\r\ne\"\r\nf"))) {
+            CsvReader.ListRowHandler lrh = reader.read(new CsvReader.ListRowHandler());
+            List<String[]> rows = lrh.getRows();
+            assertEquals(3, rows.size());
+            assertRow(rows.get(0), "a", "b");
+            assertRow(rows.get(1), "c", "d\r\ne");
+            assertRow(rows.get(2), "f");
+            assertEquals(3, lrh.getLastRowNum());
+        }
+    }
+
+    @Test
+    public void testReadMappedFile() throws IOException, URISyntaxException {
+        Path path = Paths.get(Thread.currentThread().getContextClassLoader().getResource("test.csv").toURI());
+        try(CsvReader reader = CsvModel.STANDARD.newReader(path)) {
+            CsvReader.ListRowHandler lrh = reader.read(new CsvReader.ListRowHandler());
+            List<String[]> rows = lrh.getRows();
+            assertRow(rows.get(0), "Year", "Make", "Model", "Description", "Price");
+            assertRow(rows.get(2), "1999", "Chevy", "Venture \"Extended Edition\"", "", "4900.00");
+            assertRow(rows.get(3), "1996", "Jeep", "Grand Cherokee", "MUST SELL!\nair, moon roof, loaded", "4799.00");
+            assertRow(rows.get(5), "", "", "Venture \"Extended Edition\"", "", "4900.00");
+            assertEquals(6, lrh.getLastRowNum());
+        }
+        try {
+            CsvModel.STANDARD.newReader(path, StandardCharsets.UTF_16);
+            fail();
+        } catch (CsvException e) {
+            assertTrue(e.getException() instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    public void testCursor() throws IOException {
+        try(CsvReader reader = CsvModel.STANDARD.newReader(
+                new InputStreamReader(Thread.currentThread().getContextClassLoader().getResourceAsStream("test.csv"), "UTF-8"));
+            CsvCursor cursor = reader.cursor()) {
+            assertTrue(cursor.next());
+            assertEquals(5, cursor.fieldCount());
+            assertEquals("Year", cursor.getString(0));
+            assertTrue(cursor.next());
+            assertEquals(1997, cursor.getInt(0));
+            assertEquals(1997L, cursor.getLong(0));
+            assertEquals("ac, abs, moon", cursor.charSequence(3).toString());
+            assertEquals(3000.0, cursor.getDouble(4), 0);
+            assertTrue(cursor.next());
+            assertEquals("Venture \"Extended Edition\"", cursor.getString(2));
+            assertTrue(cursor.isEmpty(3));
+            assertTrue(cursor.next());
+            assertEquals("MUST SELL!\nair, moon roof, loaded", cursor.getString(3));
+            assertEquals(4799.0, cursor.getDouble(4), 0);
+            assertTrue(cursor.next());
+            assertTrue(cursor.next());
+            assertEquals(6, cursor.getRowNum());
+            try {
+                cursor.getInt(0);
+                fail();
+            } catch (CsvException e) {
+                assertEquals(6, e.getRow());
+                assertEquals(1, e.getCol());
+            }
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void testCursorNumbers() throws IOException {
+        String [] doubles = {"0", "-0", "1.5", "-2.25e3", "1e22", "1e23", "123456789012345678", ".5", "5.", "3.14159",
+                "1E-5", "2.2250738585072014E-308", "NaN", "-Infinity", "0x1p3", "1.7976931348623157e308"};
+        StringBuilder sb = new StringBuilder();
+        for(String d : doubles) sb.append(d).append(',');
+        sb.append(Long.MIN_VALUE).append(',').append(Integer.MAX_VALUE).append(",x,2147483648");
+        try(CsvCursor cursor = CsvModel.STANDARD.newReader(new StringReader(sb.toString())).cursor()) {
+            assertTrue(cursor.next());
+            for(int i = 0; i<doubles.length; i++)
+                assertEquals(doubles[i], Double.parseDouble(doubles[i]), cursor.getDouble(i), 0);
+            int n = doubles.length;
+            assertEquals(Long.MIN_VALUE, cursor.getLong(n));
+            assertEquals(Integer.MAX_VALUE, cursor.getInt(n + 1));
+            for(int i : new int[] {n + 2, n + 3}) {
+                try {
+                    cursor.getInt(i);
+                    fail();
+                } catch (CsvException e) {
+                    assertEquals(i + 1, e.getCol());
+                }
+            }
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void testProjection() throws IOException {
+        try(CsvReader reader = CsvModel.STANDARD.newReader(new StringReader("a,b,c,d\r\n1,\"2,2\",3\r\nx,y,z,w,v\r\n"))) {
+            reader.setProjection(2, 4);
+            assertRow(reader.readRow(), null, "b", null, "d");
+            String [] row = reader.readRow();
+            //skipped trailing columns are kept as nulls
+            assertEquals(3, row.length);
+            assertRow(row, null, "2,2", null);
+            assertRow(reader.readRow(), null, "y", null, "w", null);
+        }
+        try(CsvReader reader = CsvModel.STANDARD.newReader(new StringReader("x,1,y,2.5\r\n"))) {
+            reader.setProjection(2, 4);
+            CsvCursor cursor = reader.cursor();
+            assertTrue(cursor.next());
+            assertEquals(4, cursor.fieldCount());
+            assertTrue(cursor.isEmpty(0));
+            assertEquals(1, cursor.getInt(1));
+            assertEquals(2.5, cursor.getDouble(3), 0);
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    public void testPrefetchReader() throws IOException {
+        for(int blockSize = 1; blockSize < 8; blockSize++) {
+            try(CsvReader reader = CsvModel.STANDARD.newReader(new CsvPrefetchReader(
+                    new InputStreamReader(Thread.currentThread().getContextClassLoader().getResourceAsStream("test.csv"), "UTF-8"), blockSize, 2))) {
+                List<String[]> rows = reader.read(new CsvReader.ListRowHandler()).getRows();
+                assertEquals(6, rows.size());
+                assertRow(rows.get(3), "1996", "Jeep", "Grand Cherokee", "MUST SELL!\nair, moon roof, loaded", "4799.00");
+            }
+        }
+    }
+
+    @Test
+    public void testPrefetchReaderSlowInput() throws Exception {
+        final CountDownLatch firstRowRead = new CountDownLatch(1);
+        //input gives the first row and waits till it is parsed before giving the rest
+        Reader slow = new Reader() {
+            private int calls = 0;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                String chunk;
+                switch (calls++) {
+                    case 0:
+                        chunk = "a,b\r\n";
+                        break;
+                    case 1:
+                        try {
+                            if(!firstRowRead.await(10, TimeUnit.SECONDS)) throw new IOException("First row was not delivered");
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                        chunk = "c,d\r\n";
+                        break;
+                    default:
+                        return -1;
+                }
+                chunk.getChars(0, chunk.length(), cbuf, off);
+                return chunk.length();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try(CsvReader reader = CsvModel.STANDARD.newReader(new CsvPrefetchReader(slow))) {
+            assertRow(reader.readRow(), "a", "b");
+            firstRowRead.countDown();
+            assertRow(reader.readRow(), "c", "d");
+        }
+    }
+
+    @Test
+    public void testPrefetchReaderError() throws IOException {
+        Reader failing = new Reader() {
+            private final Reader data = new StringReader("a,b\r\nc,d\r\ne,");
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                int n = data.read(cbuf, off, len);
+                if(n < 0) throw new IOException("Connection reset");
+                return n;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try(CsvReader reader = CsvModel.STANDARD.newPrefetchReader(failing)) {
+            final List<CsvException> errors = new ArrayList<>();
+            final List<String[]> rows = new ArrayList<>();
+            reader.read(new CsvReader.RowHandler<String[]>() {
+                @Override
+                public boolean onError(CsvException e) {
+                    errors.add(e);
+                    return false;
+                }
+
+                @Override
+                public boolean onValue(int rowNum, String[] value) {
+                    rows.add(value);
+                    return true;
+                }
+            });
+            assertEquals(2, rows.size());
+            assertEquals(1, errors.size());
+            assertEquals(3, errors.get(0).getRow());
+            assertEquals(1, errors.get(0).getCol());
+            assertEquals("Connection reset", errors.get(0).getException().getMessage());
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package org.jeesy.csv2b;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Artem Mironov
+ */
+public class CsvRowIndexTest {
+    @CsvRow(order = {"id", "name", "amount"})
+    public static class Item {
+        public Integer id;
+        public String name;
+        public Double amount;
+    }
+
+    private static Path generate(int rows) throws Exception {
+        Random rnd = new Random(7);
+        StringBuilder sb = new StringBuilder("id,name,amount\r\n");
+        for(int i = 0; i<rows; i++) {
+            sb.append(i).append(',');
+            switch(rnd.nextInt(4)) {
+                case 0: sb.append("\"multi\r\nline, \"\"quoted\"\"\""); break;
+                case 1: sb.append("\"\n\""); break;
+                default: sb.append("name").append(i);
+            }
+            sb.append(',').append(rnd.nextInt(10) == 0 ? "bad" : String.valueOf(i * 0.5));
+            sb.append(rnd.nextBoolean() ? "\r\n" : "\n");
+        }
+        Path path = Files.createTempFile("csv2b", ".csv");
+        Files.write(path, sb.toString().getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        Path path = generate(500);
+        try {
+            List<String []> rows = new ArrayList<>();
+            try(CsvReader reader = CsvModel.STANDARD.newReader(path)) {
+                String [] row;
+                while((row = reader.readRow()).length > 0) rows.add(row);
+            }
+            CsvRowIndex index = CsvRowIndex.build(path, StandardCharsets.UTF_8, CsvModel.STANDARD, 16);
+            assertEquals(501, index.getRowCount());
+            try(CsvReader reader = CsvModel.STANDARD.newReader(path)) {
+                for(int rowNum : new int[] {1, 2, 16, 17, 18, 250, 333, 501, 97}) {
+                    reader.seek(index, rowNum);
+                    CsvReader.ListRowHandler handler = new CsvReader.ListRowHandler();
+                    assertTrue(reader.readRow(handler));
+                    assertEquals(rowNum, handler.getLastRowNum());
+                    assertArrayEquals(rows.get(rowNum - 1), handler.getRows().get(0));
+                }
+                reader.seek(index, 502);
+                assertFalse(reader.readRow(new CsvReader.ListRowHandler()));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void testSeekBeansAndSidecar() throws Exception {
+        Path path = generate(300);
+        Path sidecar = CsvRowIndex.sidecarPath(path);
+        try {
+            final List<String> events = new ArrayList<>();
+            CsvReader.RowHandler<Item> collector = new CsvReader.RowHandler<Item>() {
+                @Override
+                public boolean onError(CsvException e) {
+                    events.add("error " + e.getRow() + ":" + e.getCol());
+                    return true;
+                }
+
+                @Override
+                public boolean onValue(int rowNum, Item value) {
+                    events.add(rowNum + ":" + value.id + ":" + value.name + ":" + value.amount);
+                    return true;
+                }
+            };
+            try(CsvBeanReader<Item> reader = CsvModel.STANDARD.newBeanReader(Item.class, path, true)) {
+                reader.readBeans(collector);
+            }
+            List<String> expected = new ArrayList<>(events);
+
+            CsvRowIndex index = CsvModel.STANDARD.rowIndex(path, 10);
+            assertTrue(Files.exists(sidecar));
+            CsvRowIndex loaded = CsvModel.STANDARD.rowIndex(path, 10);
+            assertEquals(index.getRowCount(), loaded.getRowCount());
+            assertEquals(index.getPosition(101), loaded.getPosition(101));
+            assertTrue(loaded.isUpToDate(path));
+
+            events.clear();
+            try(CsvBeanReader<Item> reader = CsvModel.STANDARD.newBeanReader(Item.class, path, true)) {
+                reader.seek(loaded, 2);
+                reader.readBeans(collector);
+            }
+            assertEquals(expected, events);
+
+            for(int rowNum : new int[] {55, 101, 102, 299}) {
+                events.clear();
+                try(CsvBeanReader<Item> reader = CsvModel.STANDARD.newBeanReader(Item.class, path, true)) {
+                    reader.seek(loaded, rowNum);
+                    reader.readBeans(collector);
+                }
+                int skipped = 0;
+                while(!expected.get(skipped).startsWith((rowNum - 1) + ":") && !expected.get(skipped).startsWith("error " + rowNum + ":")) skipped++;
+                assertEquals(expected.subList(skipped, expected.size()), events);
+            }
+
+            //truncated sidecar is rebuilt
+            byte [] saved = Files.readAllBytes(sidecar);
+            Files.write(sidecar, Arrays.copyOf(saved, saved.length / 2));
+            CsvRowIndex rebuilt = CsvModel.STANDARD.rowIndex(path, 10);
+            assertEquals(index.getPosition(101), rebuilt.getPosition(101));
+            assertTrue(Arrays.equals(saved, Files.readAllBytes(sidecar)));
+        } finally {
+            Files.deleteIfExists(sidecar);
+            Files.delete(path);
+        }
+    }
+}
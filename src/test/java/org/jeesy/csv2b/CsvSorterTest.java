@@ -0,0 +1,133 @@
+package org.jeesy.csv2b;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Artem Mironov
+ */
+public class CsvSorterTest {
+    @CsvRow(order = {"city", "amount"})
+    public static class Sale {
+        public String city;
+        @CsvCol(name = "AMT")
+        public Double amount;
+    }
+
+    private static String csv(String header, List<String[]> rows) throws IOException {
+        StringWriter out = new StringWriter();
+        try(CsvWriter writer = CsvModel.STANDARD.newWriter(out)) {
+            writer.write(header.split(","));
+            writer.write(rows);
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void testExternalSort() throws IOException {
+        Random random = new Random(7);
+        String [] cities = {"Paris", "Oslo", "New\r\nYork", "\"Rome\"", ""};
+        List<String[]> rows = new ArrayList<>();
+        for(int i = 0; i<5000; i++) {
+            rows.add(new String[] {cities[random.nextInt(cities.length)], random.nextInt(20) == 0 ? "" : String.valueOf(random.nextInt(200) - 100), "#" + i});
+        }
+        Path dir = Files.createTempDirectory("csv2b-sort");
+        Path in = dir.resolve("in.csv");
+        Path out = dir.resolve("out.csv");
+        Files.write(in, csv("city,qty,id", rows).getBytes(StandardCharsets.UTF_8));
+
+        List<String[]> expected = new ArrayList<>(rows);
+        Collections.sort(expected, new Comparator<String[]>() {
+            @Override
+            public int compare(String[] a, String[] b) {
+                int c = a[0].compareTo(b[0]);
+                if(c != 0) return c;
+                if(a[1].isEmpty() || b[1].isEmpty()) return Boolean.compare(!a[1].isEmpty(), !b[1].isEmpty());
+                return Long.compare(Long.parseLong(b[1]), Long.parseLong(a[1]));
+            }
+        });
+        try {
+            CsvSorter sorter = CsvModel.STANDARD.newSorter();
+            sorter.addKey("city", CsvColumnarReader.Type.STRING);
+            sorter.addKey("qty", CsvColumnarReader.Type.LONG, true);
+            sorter.setTempDirectory(dir);
+            //small budget makes more than MAX_MERGE_WIDTH runs
+            sorter.setMemoryBudget(10000);
+            assertEquals(5000, sorter.sort(in, out));
+            assertEquals(csv("city,qty,id", expected), new String(Files.readAllBytes(out), StandardCharsets.UTF_8));
+
+            sorter.setMemoryBudget(CsvSorter.DEFAULT_MEMORY_BUDGET);
+            StringWriter inMemory = new StringWriter();
+            assertEquals(5000, sorter.sort(new StringReader(csv("city,qty,id", rows)), inMemory));
+            assertEquals(csv("city,qty,id", expected), inMemory.toString());
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, "csv2b-sort*")) {
+                assertFalse("temp runs are deleted", files.iterator().hasNext());
+            }
+        } finally {
+            Files.deleteIfExists(in);
+            Files.deleteIfExists(out);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testSpillWithOwnModel() throws IOException {
+        CsvMetrics metrics = new CsvMetrics();
+        CsvModel model = new CsvModel('\u00a7', '"', "\r\n", true, '#', CsvModel.STANDARD.getConverter()).withMetrics(metrics);
+        StringBuilder in = new StringBuilder("id\u00a7name\r\n");
+        StringBuilder expected = new StringBuilder("id\u00a7name\r\n");
+        for(int i = 0; i<2000; i++) in.append(1999 - i).append("\u00a7n").append(i).append("\r\n");
+        for(int i = 0; i<2000; i++) expected.append(i).append("\u00a7n").append(1999 - i).append("\r\n");
+        Path dir = Files.createTempDirectory("csv2b-sort");
+        try {
+            CsvSorter sorter = model.newSorter();
+            sorter.addKey("id", CsvColumnarReader.Type.INT);
+            sorter.setTempDirectory(dir);
+            sorter.setMemoryBudget(10000);
+            StringWriter out = new StringWriter();
+            assertEquals(2000, sorter.sort(new StringReader(in.toString()), out));
+            assertEquals(expected.toString(), out.toString());
+            //temp runs are not counted
+            assertEquals(2001, metrics.getRowsRead());
+            assertEquals(in.length(), metrics.getInputRead());
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testBeanKeysAndErrors() throws IOException {
+        CsvSorter sorter = CsvModel.STANDARD.newSorter();
+        sorter.addKeys(Sale.class, "amount");
+        StringWriter out = new StringWriter();
+        sorter.sort(new StringReader("city,AMT\r\na,10\r\nb,2.5\r\nc,\r\nd,-1e3\r\n"), out);
+        assertEquals("city,AMT\r\nc,\r\nd,-1e3\r\nb,2.5\r\na,10\r\n", out.toString());
+
+        sorter = CsvModel.STANDARD.newSorter();
+        sorter.setHeader(false);
+        sorter.addKey(2, CsvColumnarReader.Type.INT, false);
+        try {
+            sorter.sort(new StringReader("a,1\r\nb,x\r\n"), new StringWriter());
+            fail();
+        } catch (CsvException e) {
+            assertEquals(2, e.getRow());
+            assertEquals(2, e.getCol());
+        }
+    }
+}
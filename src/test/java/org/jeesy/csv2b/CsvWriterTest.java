@@ -0,0 +1,222 @@
+package org.jeesy.csv2b;
+
+import org.jeesy.classinfo.TypeInfo;
+import org.jeesy.classinfo.converter.api.ConversionException;
+import org.jeesy.classinfo.converter.api.StringSerializer;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Artem Mironov
+ */
+public class CsvWriterTest {
+    public static class CodeSerializer implements StringSerializer<String> {
+        @Override
+        public String convert(String src, TypeInfo<String> srcType, TypeInfo<String> dstType) throws ConversionException {
+            if("bad".equals(src)) throw new ConversionException(src, srcType, dstType, "Cannot write code");
+            if("error".equals(src)) throw new AssertionError("Serializer failed");
+            return src;
+        }
+    }
+
+    @CsvRow(order = {"id", "code", "amount"})
+    public static class Line {
+        public int id;
+        @CsvCol(serializer = CodeSerializer.class)
+        public String code;
+        public Double amount;
+
+        Line(int id, String code, Double amount) {
+            this.id = id;
+            this.code = code;
+            this.amount = amount;
+        }
+
+        public Line() {
+        }
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        StringWriter sw = new StringWriter();
+        try(CsvWriter writer = CsvModel.STANDARD.newWriter(sw)) {
+            writer.write(new String[] {"a", "b,c", "say \"hi\"", "", "x\ny"});
+            writer.write(Arrays.asList(new String[] {"1"}, new String[] {"\"", "2"}));
+        }
+        assertEquals("a,\"b,c\",\"say \"\"hi\"\"\",,\"x\ny\"\r\n1\r\n\"\"\"\",2\r\n", sw.toString());
+    }
+
+    @Test
+    public void testCustomQuote() throws IOException {
+        CsvModel model = new CsvModel(',', '\'', "\n", true, '#', CsvModel.STANDARD.getConverter());
+        StringWriter sw = new StringWriter();
+        try(CsvWriter writer = model.newWriter(sw)) {
+            writer.write(new String[] {"it's", "a\"b", "c,d"});
+        }
+        assertEquals("'it''s',a\"b,'c,d'" + "\n", sw.toString());
+    }
+
+    @Test
+    public void testSmallBufferRoundTrip() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        for(int i = 0; i<200; i++) {
+            StringBuilder sb = new StringBuilder();
+            for(int j = 0; j<i % 17; j++) sb.append("ab\",\r\n".charAt((i + j) % 6));
+            rows.add(new String[] {sb.toString(), String.valueOf(i), "x"});
+        }
+        for(int bufferSize = 1; bufferSize < 10; bufferSize++) {
+            StringWriter sw = new StringWriter();
+            try(CsvWriter writer = new CsvWriter(sw, CsvModel.STANDARD, bufferSize)) {
+                writer.write(rows);
+            }
+            try(CsvReader reader = CsvModel.STANDARD.newReader(new StringReader(sw.toString()))) {
+                List<String[]> read = reader.read(new CsvReader.ListRowHandler()).getRows();
+                assertEquals(rows.size(), read.size());
+                for(int i = 0; i<rows.size(); i++) assertArrayEquals(rows.get(i), read.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedRoundTrip() throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        for(int i = 0; i<10000; i++) rows.add(new String[] {String.valueOf(i), "name " + i, i % 7 == 0 ? "a,\"b\"" : "\u00e9t\u00e9"});
+        for(CsvCompression compression : CsvCompression.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try(CsvWriter writer = CsvModel.STANDARD.newCompressedWriter(out, compression, StandardCharsets.UTF_8, Deflater.BEST_SPEED, 1024)) {
+                writer.write(rows);
+            }
+            try(CsvReader reader = CsvModel.STANDARD.newCompressedReader(new ByteArrayInputStream(out.toByteArray()), compression, StandardCharsets.UTF_8)) {
+                List<String[]> read = reader.read(new CsvReader.ListRowHandler()).getRows();
+                assertEquals(rows.size(), read.size());
+                for(int i = 0; i<rows.size(); i++) assertArrayEquals(rows.get(i), read.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedBeanReaderClosedOnHeaderError() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(CsvWriter writer = CsvModel.STANDARD.newCompressedWriter(out, CsvCompression.GZIP, StandardCharsets.UTF_8, Deflater.BEST_SPEED, 1024)) {
+            writer.write(new String[] {"id", "name", "value"});
+        }
+        final boolean [] closed = new boolean[1];
+        //stream ends in the middle of compressed data
+        ByteArrayInputStream in = new ByteArrayInputStream(Arrays.copyOf(out.toByteArray(), 12)) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+            }
+        };
+        try {
+            CsvModel.STANDARD.newCompressedBeanReader(Line.class, in, CsvCompression.GZIP, StandardCharsets.UTF_8, true);
+            fail();
+        } catch (CsvException e) {
+            assertTrue(closed[0]);
+        }
+    }
+
+    @Test
+    public void testFailedBeanWithSmallBuffer() throws IOException {
+        List<Line> good = new ArrayList<>();
+        StringWriter expected = new StringWriter();
+        for(int bufferSize = 1; bufferSize < 24; bufferSize++) {
+            StringWriter actual = new StringWriter();
+            good.clear();
+            try(CsvBeanWriter<Line> writer = new CsvBeanWriter<>(Line.class, actual, CsvModel.STANDARD, bufferSize)) {
+                for(int i = 0; i<50; i++) {
+                    Line line = new Line(i * 123457, i % 4 == 1 ? "bad" : "a-very-long-name-" + i, i * 0.5);
+                    try {
+                        writer.writeBean(line);
+                        good.add(line);
+                    } catch (CsvException e) {
+                        assertEquals("bad", line.code);
+                    }
+                }
+            }
+            expected = new StringWriter();
+            try(CsvBeanWriter<Line> writer = CsvModel.STANDARD.newBeanWriter(Line.class, expected)) {
+                writer.writeBeans(good);
+            }
+            assertEquals("buffer " + bufferSize, expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void testParallelBeanWriter() throws Exception {
+        List<Line> lines = new ArrayList<>();
+        for(int i = 0; i<5000; i++) lines.add(new Line(i, i % 3 == 0 ? "a,\"" + i + "\"" : "c" + i, i % 5 == 0 ? null : i * 0.5));
+        StringWriter expected = new StringWriter();
+        try(CsvBeanWriter<Line> writer = CsvModel.STANDARD.newBeanWriter(Line.class, expected)) {
+            writer.writeHeader();
+            writer.writeBeans(lines);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            for(int batchSize : new int[] {1, 7, 1000}) {
+                StringWriter actual = new StringWriter();
+                try(CsvBeanWriter<Line> writer = CsvModel.STANDARD.newBeanWriter(Line.class, actual)) {
+                    writer.setConversionExecutor(executor);
+                    writer.setBatchSize(batchSize);
+                    writer.writeHeader();
+                    writer.writeBeans(lines);
+                }
+                assertEquals(expected.toString(), actual.toString());
+            }
+
+            lines.get(3210).code = "bad";
+            StringWriter actual = new StringWriter();
+            try(CsvBeanWriter<Line> writer = CsvModel.STANDARD.newBeanWriter(Line.class, actual)) {
+                writer.setConversionExecutor(executor);
+                writer.setBatchSize(100);
+                writer.writeHeader();
+                try {
+                    writer.writeBeans(lines);
+                    fail();
+                } catch (CsvException e) {
+                    assertEquals(3212, e.getRow());
+                }
+            }
+            String out = expected.toString();
+            int end = 0;
+            for(int i = 0; i<3210; i++) end = out.indexOf("\r\n" + (i + 1) + ",", end) + 2;
+            assertEquals(out.substring(0, end), actual.toString());
+
+            //error of serializer stops writing after the rows before it
+            List<Line> few = new ArrayList<>();
+            for(int i = 0; i<10; i++) few.add(new Line(i, i == 3 ? "error" : "v" + i, null));
+            actual = new StringWriter();
+            try(CsvBeanWriter<Line> writer = CsvModel.STANDARD.newBeanWriter(Line.class, actual)) {
+                writer.setConversionExecutor(executor);
+                writer.setBatchSize(5);
+                try {
+                    writer.writeBeans(few);
+                    fail();
+                } catch (CsvException e) {
+                    assertEquals(4, e.getRow());
+                    assertTrue(e.getException().getCause() instanceof AssertionError);
+                }
+            }
+            assertEquals("0,v0,\r\n1,v1,\r\n2,v2,\r\n", actual.toString());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}